@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2017 DropDemBits <r3usrlnd@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package gio.ddb.serial2;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for decoding documents
+ * @author DropDemBits <r3usrlnd@gmail.com>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class DecodeBenchmark {
+    
+    @Param
+    public DocumentShapes shape;
+    
+    private byte[] document;
+    private byte[] list;
+    
+    @Setup
+    public void setup() {
+        document = shape.create().getSerialized();
+        
+        SEList generic = new SEList();
+        for(int i = 0; i < 1000; i++) generic.setValue(i, i);
+        list = generic.getSerialized();
+    }
+    
+    @Benchmark
+    public SEBlock decode() {
+        return new SEBlock(document);
+    }
+    
+    @Benchmark
+    public SEBlock decodeLazy() {
+        return new SELazyBlock(document);
+    }
+    
+    @Benchmark
+    public byte[] roundTrip() {
+        return new SEBlock(document).getSerialized();
+    }
+    
+    @Benchmark
+    public byte[] listRoundTrip() {
+        return new SEList(list).getSerialized();
+    }
+    
+}
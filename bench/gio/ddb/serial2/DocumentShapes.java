@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2017 DropDemBits <r3usrlnd@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package gio.ddb.serial2;
+
+/**
+ * Document shapes used by the benchmarks
+ * @author DropDemBits <r3usrlnd@gmail.com>
+ */
+public enum DocumentShapes {
+    
+    /**
+     * One block with many primitive fields
+     */
+    FLAT_WIDE {
+        @Override
+        public SEBlock create() {
+            SEBlock block = new SEBlock();
+            for(int i = 0; i < 1000; i++) {
+                switch(i % 4) {
+                    case 0: block.setValue("int" + i, i); break;
+                    case 1: block.setValue("long" + i, (long) i << 32); break;
+                    case 2: block.setValue("double" + i, i * 0.5d); break;
+                    default: block.setValue("bool" + i, (i & 8) != 0); break;
+                }
+            }
+            return block;
+        }
+    },
+    
+    /**
+     * Blocks nested inside of each other, with a few fields on each level
+     */
+    DEEP_NESTING {
+        @Override
+        public SEBlock create() {
+            SEBlock root = new SEBlock();
+            SEBlock current = root;
+            for(int depth = 0; depth < 64; depth++) {
+                current.setValue("depth", depth);
+                current.setValue("name", "level" + depth);
+                SEList list = new SEList();
+                list.setValue(0, depth);
+                list.setValue(1, (double) depth);
+                current.setValue("list", list);
+                
+                SEBlock child = new SEBlock();
+                current.setValue("child", child);
+                current = child;
+            }
+            return root;
+        }
+    },
+    
+    /**
+     * Many long keys and string values
+     */
+    BIG_STRINGS {
+        @Override
+        public SEBlock create() {
+            SEBlock block = new SEBlock();
+            StringBuilder value = new StringBuilder();
+            for(int i = 0; i < 500; i++) {
+                value.append((char) ('a' + i % 26));
+                block.setValue("a.rather.long.configuration.key.number." + i, value.toString());
+            }
+            return block;
+        }
+    },
+    
+    /**
+     * Large lists of primitives, both packed and generic
+     */
+    PRIMITIVE_LISTS {
+        @Override
+        public SEBlock create() {
+            SEBlock block = new SEBlock();
+            double[] doubles = new double[100000];
+            int[] ints = new int[100000];
+            for(int i = 0; i < doubles.length; i++) {
+                doubles[i] = i / 3d;
+                ints[i] = i * 7;
+            }
+            block.setValue("doubles", new SEDoubleList(doubles));
+            block.setValue("ints", new SEIntList(ints));
+            
+            SEList generic = new SEList();
+            for(int i = 0; i < 10000; i++) generic.setValue(i, i / 3d);
+            block.setValue("generic", generic);
+            return block;
+        }
+    };
+    
+    /**
+     * Creates a new document of this shape
+     * @return The root block of the document
+     */
+    public abstract SEBlock create();
+    
+}
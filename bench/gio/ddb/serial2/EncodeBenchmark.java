@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2017 DropDemBits <r3usrlnd@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package gio.ddb.serial2;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks for encoding documents and calculating their size
+ * @author DropDemBits <r3usrlnd@gmail.com>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class EncodeBenchmark {
+    
+    @Param
+    public DocumentShapes shape;
+    
+    /**
+     * Whether unchanged values keep their serialized version
+     */
+    @Param({"false", "true"})
+    public boolean caching;
+    
+    private SEBlock document;
+    private int counter;
+    private SEList list;
+    private final ByteArrayPool pool = new ByteArrayPool();
+    private final SEParallelEncoder parallel = new SEParallelEncoder();
+    
+    @Setup
+    public void setup() {
+        SEBase.CACHE_THRESHOLD = caching ? 64 : Integer.MAX_VALUE;
+        document = shape.create();
+        
+        list = new SEList();
+        for(int i = 0; i < 1000; i++) list.setValue(i, i);
+    }
+    
+    @Benchmark
+    public byte[] getSerialized() {
+        return document.getSerialized();
+    }
+    
+    @Benchmark
+    public byte[] setThenSerialized() {
+        //Only the root changes, so its children can be copied if they are cached
+        document.setValue("counter", counter++);
+        return document.getSerialized();
+    }
+    
+    @Benchmark
+    public byte[] parallelSerialized() {
+        return parallel.encode(document);
+    }
+    
+    @Benchmark
+    public void serializePooled(Blackhole hole) {
+        ByteArrayParser dest = document.serialize(pool);
+        hole.consume(dest.toBytes());
+        dest.release();
+    }
+    
+    @Benchmark
+    public void writeToStream(Blackhole hole) throws Exception {
+        ByteStreamParser parser = new ByteStreamParser(new BlackholeOutputStream(hole));
+        parser.write(document);
+    }
+    
+    @Benchmark
+    public int recalculateSize() {
+        document.recalculateSize();
+        return document.getSize();
+    }
+    
+    @Benchmark
+    public byte[] listSerialized() {
+        return list.getSerialized();
+    }
+    
+    /**
+     * OutputStream that just consumes everything written to it
+     */
+    private static class BlackholeOutputStream extends java.io.OutputStream {
+        
+        private final Blackhole hole;
+        
+        BlackholeOutputStream(Blackhole hole) {
+            this.hole = hole;
+        }
+        
+        @Override
+        public void write(int b) {
+            hole.consume(b);
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) {
+            hole.consume(b);
+        }
+        
+    }
+    
+}
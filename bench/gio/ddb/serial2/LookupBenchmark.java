@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2017 DropDemBits <r3usrlnd@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package gio.ddb.serial2;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks for reading fields out of documents
+ * @author DropDemBits <r3usrlnd@gmail.com>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class LookupBenchmark {
+    
+    private SEBlock flat;
+    private byte[] flatBytes;
+    private byte[] indexedBytes;
+    private SEBlock deep;
+    
+    @Setup
+    public void setup() {
+        flat = DocumentShapes.FLAT_WIDE.create();
+        flatBytes = flat.getSerialized();
+        
+        SEBlock indexed = DocumentShapes.FLAT_WIDE.create();
+        indexed.setFormat(SEFormat.DEFAULT.withIndex(true));
+        indexedBytes = indexed.getSerialized();
+        deep = DocumentShapes.DEEP_NESTING.create();
+    }
+    
+    @Benchmark
+    public void flatGetters(Blackhole hole) {
+        hole.consume(flat.getInt("int500"));
+        hole.consume(flat.getLong("long501"));
+        hole.consume(flat.getDouble("double502"));
+        hole.consume(flat.getBoolean("bool503"));
+    }
+    
+    @Benchmark
+    public void lazyGetters(Blackhole hole) {
+        SEBlock lazy = new SELazyBlock(flatBytes);
+        hole.consume(lazy.getInt("int500"));
+        hole.consume(lazy.getLong("long501"));
+        hole.consume(lazy.getDouble("double502"));
+    }
+    
+    @Benchmark
+    public int viewGetter() {
+        return new SEBlockView(ByteBuffer.wrap(flatBytes)).getInt("int500");
+    }
+    
+    @Benchmark
+    public int indexedViewGetter() {
+        return new SEBlockView(ByteBuffer.wrap(indexedBytes)).getInt("int500");
+    }
+    
+    @Benchmark
+    public int deepGetters() {
+        SEBlock current = deep;
+        int sum = 0;
+        while(current != null) {
+            sum += current.getInt("depth");
+            sum += current.getList("list").getInt(0);
+            current = current.getBlock("child");
+        }
+        return sum;
+    }
+    
+}
@@ -16,14 +16,29 @@
  */
 package gio.ddb.serial2;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
 /**
  * Utility for converting data types to bytes and vise versa
+ * Appending past the end of the byte array drops the value, unless the parser is growable
  * @author DropDemBits <r3usrlnd@gmail.com>
  */
 public class ByteArrayParser {
 
     /* Byte array containing the data */
 	private byte[] bytes;
+    /* Little endian view of the byte array, for multi-byte accesses */
+	private ByteBuffer view;
+    /* The wire format values are written and read in */
+	private SEFormat format = SEFormat.DEFAULT;
+    /* The pool the byte array was taken from, if any */
+	private ByteArrayPool pool;
+    /* Whether the byte array grows instead of truncating values */
+	private boolean growable;
+    /* Whether a value has been truncated */
+	private boolean truncated;
     
     /**
      * The current index pointing to the byte array
@@ -36,7 +51,9 @@ public class ByteArrayParser {
      */
 	public ByteArrayParser(ByteArrayParser other) {
 		bytes = other.bytes;
+		view = other.view;
 		index = other.index;
+		format = other.format;
 	}
 	
     /**
@@ -45,6 +62,7 @@ public class ByteArrayParser {
      */
 	public ByteArrayParser(byte[] src) {
 		bytes = src;
+		view = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
 	}
 	
     /**
@@ -52,7 +70,127 @@ public class ByteArrayParser {
      * @param size The length of the byte array
      */
 	public ByteArrayParser(int size) {
-		bytes = new byte[size];
+		this(new byte[size]);
+	}
+	
+    /**
+     * Creates a new ByteArrayParser that can grow as values are appended
+     * A growable parser never truncates, so the size of what is written doesn't need to be known up front.
+     * Use trim() to get the data without the unused space at the end
+     * @param size The initial length of the byte array
+     * @param growable True to grow the byte array when it fills up
+     */
+	public ByteArrayParser(int size, boolean growable) {
+		this(new byte[Math.max(size, growable ? 1 : 0)]);
+		this.growable = growable;
+	}
+	
+    /**
+     * Creates a new ByteArrayParser with a byte array taken from a pool
+     * The byte array may be bigger than size. Call release() once the data is no longer needed
+     * @param pool The pool to take the byte array from, or null to allocate it
+     * @param size The smallest length of the byte array
+     */
+	public ByteArrayParser(ByteArrayPool pool, int size) {
+		this(pool == null ? new byte[size] : pool.acquire(size));
+		this.pool = pool;
+	}
+	
+    /**
+     * Creates a new ByteArrayParser with a byte array taken from a pool, that can grow as values are appended
+     * @param pool The pool to take the byte arrays from, or null to allocate them
+     * @param size The initial length of the byte array
+     * @param growable True to grow the byte array when it fills up
+     */
+	public ByteArrayParser(ByteArrayPool pool, int size, boolean growable) {
+		this(pool, Math.max(size, growable ? 1 : 0));
+		this.growable = growable;
+	}
+	
+    /**
+     * Gives the byte array back to the pool it was taken from
+     * The parser is left empty, and the byte array must not be used afterwards
+     */
+	public void release() {
+		if(pool != null) pool.release(bytes);
+		pool = null;
+		bytes = new byte[0];
+		view = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+		index = 0;
+	}
+	
+    /**
+     * Gets the wire format values are written and read in
+     * @return The format
+     */
+	public SEFormat getFormat() {
+		return format;
+	}
+	
+    /**
+     * Sets the wire format values are written and read in
+     * @param format The format
+     */
+	public void setFormat(SEFormat format) {
+		this.format = format;
+	}
+	
+    /**
+     * Makes room for a value that is about to be appended
+     * Subclasses can override this to flush or grow the byte array
+     * @param length The amount of bytes that are about to be appended
+     * @return True if there is enough room, false if the value would be truncated
+     */
+	protected boolean reserve(int length) {
+		if(index+length <= bytes.length) return true;
+		
+		if(growable && index+length >= 0) {
+			grow(index+length);
+			return true;
+		}
+		
+		truncated = true;
+		return false;
+	}
+	
+    /**
+     * Grows the byte array geometrically, keeping the data written so far
+     * Arrays taken from a pool are replaced by bigger ones from the same pool
+     * @param minLength The smallest length the byte array can be
+     */
+	private void grow(int minLength) {
+		int length = (int) Math.min(Math.max((long) bytes.length * 2, minLength), Integer.MAX_VALUE - 8);
+		byte[] grown = pool != null ? pool.acquire(length) : new byte[length];
+		System.arraycopy(bytes, 0, grown, 0, index);
+		
+		if(pool != null) pool.release(bytes);
+		bytes = grown;
+		view = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+    /**
+     * Checks if the byte array ever filled up and a value was dropped
+     * Growable parsers never truncate
+     * @return True if a value has been truncated
+     */
+	public boolean isTruncated() {
+		return truncated;
+	}
+	
+    /**
+     * Shrinks the byte array to the data written so far (up to the index)
+     * A pooled byte array is copied and given back to the pool
+     * @return The trimmed byte array
+     */
+	public byte[] trim() {
+		if(index == bytes.length && pool == null) return bytes;
+		
+		byte[] trimmed = Arrays.copyOf(bytes, index);
+		if(pool != null) pool.release(bytes);
+		pool = null;
+		bytes = trimmed;
+		view = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+		return bytes;
 	}
 	
     /**
@@ -82,7 +220,7 @@ public class ByteArrayParser {
      * @param bool The boolean value to append
      */
 	public void addBoolean(boolean bool) {
-		if(index+1 >= bytes.length) {
+		if(!reserve(1)) {
             if(Serializable.DEBUG) System.err.println("ERR: Truncating value");
             return;
         }
@@ -95,13 +233,38 @@ public class ByteArrayParser {
      * @param b The byte value to append
      */
 	public void addByte(byte b) {
-		if(index+1 > bytes.length) {
+		if(!reserve(1)) {
             if(Serializable.DEBUG) System.err.println("ERR: Truncating value");
             return;
         }
 		bytes[index++] = b;
 	}
 	
+    /**
+     * Appends a byte array
+     * Will not do anything if appending causes the index to be greater than the length
+     * @param src The byte array to append
+     */
+	public void addBytes(byte[] src) {
+		addBytes(src, 0, src.length);
+	}
+	
+    /**
+     * Appends part of a byte array
+     * Will not do anything if appending causes the index to be greater than the length
+     * @param src The byte array to append from
+     * @param offset The offset into src to start copying from
+     * @param length The amount of bytes to copy
+     */
+	public void addBytes(byte[] src, int offset, int length) {
+		if(!reserve(length)) {
+            if(Serializable.DEBUG) System.err.println("ERR: Truncating value");
+            return;
+        }
+		System.arraycopy(src, offset, bytes, index, length);
+		index += length;
+	}
+	
     /**
      * Appends a char
      * Will not do anything if appending causes the index to be greater than or equal to the length
@@ -117,12 +280,12 @@ public class ByteArrayParser {
      * @param s The short value to append
      */
 	public void addShort(short s) {
-		if(index+2 > bytes.length) {
+		if(!reserve(Short.BYTES)) {
             if(Serializable.DEBUG) System.err.println("ERR: Truncating value");
             return;
         }
-		bytes[index++] = (byte)(s & 0xFF);
-		bytes[index++] = (byte)(s >> 8);
+		view.putShort(index, s);
+		index += Short.BYTES;
 	}
 	
     /**
@@ -131,15 +294,11 @@ public class ByteArrayParser {
      * @param i The integer value to append
      */
 	public void addInt(int i) {
-		if(index+Integer.BYTES > bytes.length) {
+		if(!reserve(Integer.BYTES)) {
             if(Serializable.DEBUG) System.err.println("ERR: Truncating value");
             return;
         }
-		
-		for(int off = 0; off < Integer.BYTES; off++) {
-			bytes[index+off] = (byte) ((i >> (off*8)) & 0xFF);
-		}
-		
+		view.putInt(index, i);
 		index += Integer.BYTES;
 	}
 	
@@ -149,15 +308,11 @@ public class ByteArrayParser {
      * @param l The long value to append
      */
 	public void addLong(long l) {
-		if(index+Long.BYTES > bytes.length) {
+		if(!reserve(Long.BYTES)) {
             if(Serializable.DEBUG) System.err.println("ERR: Truncating value");
             return;
         }
-		
-		for(int off = 0; off < Long.BYTES; off++) {
-			bytes[index+off] = (byte) ((l >> (off*8)) & 0xFF);
-		}
-		
+		view.putLong(index, l);
 		index += Long.BYTES;
 	}
 	
@@ -179,6 +334,83 @@ public class ByteArrayParser {
 		addLong(Double.doubleToRawLongBits(d));
 	}
 	
+    /**
+     * Appends an unsigned integer as a LEB128 varint
+     * Will not do anything if appending causes the index to be greater than the length
+     * @param i The integer value to append, treated as unsigned
+     */
+	public void addVarInt(int i) {
+		addVarLong(i & 0xFFFFFFFFL);
+	}
+	
+    /**
+     * Appends an unsigned long as a LEB128 varint
+     * Will not do anything if appending causes the index to be greater than the length
+     * @param l The long value to append, treated as unsigned
+     */
+	public void addVarLong(long l) {
+		if(!reserve(varLongSize(l))) {
+            if(Serializable.DEBUG) System.err.println("ERR: Truncating value");
+            return;
+        }
+		while((l & ~0x7FL) != 0) {
+			bytes[index++] = (byte) (l | 0x80);
+			l >>>= 7;
+		}
+		bytes[index++] = (byte) l;
+	}
+	
+    /**
+     * Appends part of an integer array
+     * Values that don't fit are truncated one at a time, like addInt
+     * @param src The array to append from
+     * @param offset The offset into src to start copying from
+     * @param length The amount of integers to copy
+     */
+	public void addInts(int[] src, int offset, int length) {
+		if(!reserve(length * Integer.BYTES)) {
+            //Doesn't fit in one go, so append one at a time
+			for(int i = 0; i < length; i++) addInt(src[offset+i]);
+			return;
+		}
+		viewAt(index).asIntBuffer().put(src, offset, length);
+		index += length * Integer.BYTES;
+	}
+	
+    /**
+     * Appends part of a long array
+     * Values that don't fit are truncated one at a time, like addLong
+     * @param src The array to append from
+     * @param offset The offset into src to start copying from
+     * @param length The amount of longs to copy
+     */
+	public void addLongs(long[] src, int offset, int length) {
+		if(!reserve(length * Long.BYTES)) {
+            //Doesn't fit in one go, so append one at a time
+			for(int i = 0; i < length; i++) addLong(src[offset+i]);
+			return;
+		}
+		viewAt(index).asLongBuffer().put(src, offset, length);
+		index += length * Long.BYTES;
+	}
+	
+    /**
+     * Appends part of a double array
+     * Values that don't fit are truncated one at a time, like addDouble
+     * @param src The array to append from
+     * @param offset The offset into src to start copying from
+     * @param length The amount of doubles to copy
+     */
+	public void addDoubles(double[] src, int offset, int length) {
+		if(!reserve(length * Double.BYTES)) {
+            //Doesn't fit in one go, so append one at a time
+			for(int i = 0; i < length; i++) addDouble(src[offset+i]);
+			return;
+		}
+		viewAt(index).asDoubleBuffer().put(src, offset, length);
+		index += length * Double.BYTES;
+	}
+	
     /**
      * Gets the boolean at the current index
      * Will not change the current index
@@ -212,7 +444,7 @@ public class ByteArrayParser {
      * @return The short value at the current index
      */
 	public short getShort() {
-		return (short)(bytes[index] | bytes[index+1] << 8);
+		return view.getShort(index);
 	}
 	
     /**
@@ -221,13 +453,7 @@ public class ByteArrayParser {
      * @return The integer value at the current index
      */
 	public int getInt() {
-		int retval = 0;
-		
-		for(int off = 0; off < Integer.BYTES; off++) {
-			retval |= bytes[index+off] << off*8;
-		}
-		
-		return retval;
+		return view.getInt(index);
 	}
 	
     /**
@@ -236,13 +462,7 @@ public class ByteArrayParser {
      * @return The long value at the current index
      */
 	public long getLong() {
-		Long retval = 0L;
-		
-		for(int off = 0; off < Long.BYTES; off++) {
-			retval |= bytes[index+off] << off*8;
-		}
-		
-		return retval;
+		return view.getLong(index);
 	}
 	
     /**
@@ -263,6 +483,112 @@ public class ByteArrayParser {
 		return Double.longBitsToDouble(getLong());
 	}
 	
+    /**
+     * Reads the unsigned LEB128 varint at the current index
+     * Unlike the other getters, this moves the index past the varint
+     * @return The integer value, or -1 if the varint is truncated or too long
+     */
+	public int readVarInt() {
+		long value = readVarLong();
+		return value >>> 32 != 0 ? -1 : (int) value;
+	}
+	
+    /**
+     * Reads the unsigned LEB128 varint at the current index
+     * Unlike the other getters, this moves the index past the varint
+     * Stops at the end of the byte array if the varint is truncated
+     * @return The long value
+     */
+	public long readVarLong() {
+		long value = 0;
+		for(int shift = 0; shift < Long.SIZE && index < bytes.length; shift += 7) {
+			byte b = bytes[index++];
+			value |= (b & 0x7FL) << shift;
+			if(b >= 0) return value;
+		}
+		return -1;
+	}
+	
+    /**
+     * Gets the amount of bytes an unsigned integer takes up as a varint
+     * @param i The integer value, treated as unsigned
+     * @return The size of the varint, from 1 to 5 bytes
+     */
+	public static int varIntSize(int i) {
+		return varLongSize(i & 0xFFFFFFFFL);
+	}
+	
+    /**
+     * Gets the amount of bytes an unsigned long takes up as a varint
+     * @param l The long value, treated as unsigned
+     * @return The size of the varint, from 1 to 10 bytes
+     */
+	public static int varLongSize(long l) {
+		return 1 + (Long.SIZE - 1 - Long.numberOfLeadingZeros(l | 1)) / 7;
+	}
+	
+    /**
+     * Zig-zag encodes a signed long, so values close to zero have short varints
+     * @param l The signed value
+     * @return The zig-zag encoded value
+     */
+	public static long zigZag(long l) {
+		return (l << 1) ^ (l >> 63);
+	}
+	
+    /**
+     * Decodes a zig-zag encoded long
+     * @param l The zig-zag encoded value
+     * @return The signed value
+     */
+	public static long unZigZag(long l) {
+		return (l >>> 1) ^ -(l & 1);
+	}
+	
+    /**
+     * Copies integers starting at the current index into an array
+     * Will not change the current index
+     * @param dest The array to copy into
+     * @param offset The offset into dest to start copying to
+     * @param length The amount of integers to copy
+     */
+	public void getInts(int[] dest, int offset, int length) {
+		viewAt(index).asIntBuffer().get(dest, offset, length);
+	}
+	
+    /**
+     * Copies longs starting at the current index into an array
+     * Will not change the current index
+     * @param dest The array to copy into
+     * @param offset The offset into dest to start copying to
+     * @param length The amount of longs to copy
+     */
+	public void getLongs(long[] dest, int offset, int length) {
+		viewAt(index).asLongBuffer().get(dest, offset, length);
+	}
+	
+    /**
+     * Copies doubles starting at the current index into an array
+     * Will not change the current index
+     * @param dest The array to copy into
+     * @param offset The offset into dest to start copying to
+     * @param length The amount of doubles to copy
+     */
+	public void getDoubles(double[] dest, int offset, int length) {
+		viewAt(index).asDoubleBuffer().get(dest, offset, length);
+	}
+	
+    /**
+     * Creates a little endian view of the byte array, starting at a position
+     * @param position The position the view starts at
+     * @return The view
+     */
+	private ByteBuffer viewAt(int position) {
+		ByteBuffer buffer = view.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		buffer.position(position);
+		return buffer;
+	}
+	
     /**
      * Just returns the current data
      * @return The data in the byte array
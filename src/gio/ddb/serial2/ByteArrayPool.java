@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2017 DropDemBits <r3usrlnd@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package gio.ddb.serial2;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe pool of byte arrays, for reusing serialization buffers
+ * Arrays are handed out in power of two size classes. Each thread keeps one small array per size class
+ * for itself, and the rest are shared between threads up to a limit on the bytes retained.
+ * Pooled arrays aren't cleared, and must not be used after they are released.
+ * @author DropDemBits <r3usrlnd@gmail.com>
+ */
+public class ByteArrayPool {
+    
+    /**
+     * Pool shared by everything that doesn't need its own
+     */
+    public static final ByteArrayPool SHARED = new ByteArrayPool();
+    
+    /* Smallest size class, as a power of two */
+    private static final int MIN_SHIFT = 8;
+    /* Largest size class kept in the per thread caches */
+    private static final int MAX_THREAD_CACHED = 1 << 16;
+    
+    /* Pooled arrays, by size class */
+    private final ConcurrentLinkedDeque<byte[]>[] shared;
+    private final ThreadLocal<byte[][]> cache;
+    private final int maxArraySize;
+    private final long maxRetained;
+    /* Metrics */
+    private final AtomicLong retained = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    
+    /**
+     * Creates a new pool pooling arrays up to 16 MiB, and retaining up to 64 MiB
+     */
+    public ByteArrayPool() {
+        this(1 << 24, 1L << 26);
+    }
+    
+    /**
+     * Creates a new pool
+     * @param maxArraySize The largest array to pool. Bigger arrays are allocated and dropped as usual
+     * @param maxRetained The most bytes to keep in the pool
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ByteArrayPool(int maxArraySize, long maxRetained) {
+        int classes = Math.max(sizeClass(maxArraySize) + 1, 1);
+        this.maxArraySize = classSize(classes - 1);
+        this.maxRetained = maxRetained;
+        this.shared = new ConcurrentLinkedDeque[classes];
+        for(int i = 0; i < classes; i++)
+            shared[i] = new ConcurrentLinkedDeque<>();
+        this.cache = ThreadLocal.withInitial(() -> new byte[classes][]);
+    }
+    
+    /**
+     * Gets the size class an array size falls in
+     */
+    private static int sizeClass(int size) {
+        if(size <= 1 << MIN_SHIFT) return 0;
+        return Integer.SIZE - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT;
+    }
+    
+    /**
+     * Gets the size of the arrays in a size class
+     */
+    private static int classSize(int sizeClass) {
+        return 1 << (sizeClass + MIN_SHIFT);
+    }
+    
+    /**
+     * Takes an array out of the pool, or allocates a new one if there are none
+     * @param size The smallest size the array can be
+     * @return An array at least as big as size, with undefined contents
+     */
+    public byte[] acquire(int size) {
+        if(size > maxArraySize) {
+            misses.increment();
+            return new byte[size];
+        }
+        
+        int sizeClass = sizeClass(size);
+        byte[][] local = cache.get();
+        byte[] array = local[sizeClass];
+        
+        if(array != null) {
+            local[sizeClass] = null;
+        } else {
+            array = shared[sizeClass].pollFirst();
+            if(array == null) {
+                misses.increment();
+                return new byte[classSize(sizeClass)];
+            }
+            retained.addAndGet(-array.length);
+        }
+        
+        hits.increment();
+        return array;
+    }
+    
+    /**
+     * Gives an array back to the pool
+     * Arrays that weren't handed out by the pool, or that don't fit, are left to the garbage collector
+     * @param array The array to release. Must not be used afterwards
+     */
+    public void release(byte[] array) {
+        if(array.length > maxArraySize || array.length != classSize(sizeClass(array.length))) {
+            dropped.increment();
+            return;
+        }
+        
+        int sizeClass = sizeClass(array.length);
+        byte[][] local = cache.get();
+        if(local[sizeClass] == null && array.length <= MAX_THREAD_CACHED) {
+            //Not counted in the retained bytes, since it can't be taken back out when the thread ends
+            local[sizeClass] = array;
+            return;
+        }
+        
+        if(retained.addAndGet(array.length) > maxRetained) {
+            retained.addAndGet(-array.length);
+            dropped.increment();
+            return;
+        }
+        shared[sizeClass].offerFirst(array);
+    }
+    
+    /**
+     * Gets the amount of acquires served from the pool
+     * @return The amount of hits
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+    
+    /**
+     * Gets the amount of acquires that had to allocate
+     * @return The amount of misses
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+    
+    /**
+     * Gets the amount of released arrays that weren't kept
+     * @return The amount of dropped arrays
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+    
+    /**
+     * Gets the ratio of acquires served from the pool
+     * @return The hit rate, from 0 to 1
+     */
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+    
+    /**
+     * Gets the amount of bytes held by the shared part of the pool, which is what maxRetained limits
+     * Arrays in the threads' own caches aren't included (see getThreadCachedBytes())
+     * @return The amount of bytes retained
+     */
+    public long getRetainedBytes() {
+        return retained.get();
+    }
+    
+    /**
+     * Gets the amount of bytes held in the calling thread's own cache
+     * Each thread holds at most one array per size class up to 64 KiB, which are freed along with the thread
+     * @return The amount of bytes cached by the calling thread
+     */
+    public long getThreadCachedBytes() {
+        long bytes = 0;
+        for(byte[] array : cache.get()) {
+            if(array != null) bytes += array.length;
+        }
+        return bytes;
+    }
+    
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2017 DropDemBits <r3usrlnd@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package gio.ddb.serial2;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * ByteArrayParser that streams serialized data to an OutputStream or a WritableByteChannel
+ * The byte array is used as a bounded buffer, and is flushed whenever it fills up
+ * @author DropDemBits <r3usrlnd@gmail.com>
+ */
+public class ByteStreamParser extends ByteArrayParser {
+
+    /**
+     * The default size of the buffer
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+    /**
+     * The smallest buffer, which fits the longest single value (a 64 bit varint)
+     */
+    private static final int MIN_BUFFER_SIZE = 10;
+
+    /* Only one of these is set */
+    private final OutputStream out;
+    private final WritableByteChannel channel;
+
+    /**
+     * Creates a new ByteStreamParser writing to an OutputStream
+     * @param out The stream to write to
+     */
+    public ByteStreamParser(OutputStream out) {
+        this(out, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a new ByteStreamParser writing to an OutputStream
+     * @param out The stream to write to
+     * @param bufferSize The size of the buffer
+     */
+    public ByteStreamParser(OutputStream out, int bufferSize) {
+        super(Math.max(bufferSize, MIN_BUFFER_SIZE));
+        this.out = out;
+        this.channel = null;
+    }
+
+    /**
+     * Creates a new ByteStreamParser writing to a WritableByteChannel
+     * @param channel The (blocking) channel to write to
+     */
+    public ByteStreamParser(WritableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a new ByteStreamParser writing to a WritableByteChannel
+     * @param channel The (blocking) channel to write to
+     * @param bufferSize The size of the buffer
+     */
+    public ByteStreamParser(WritableByteChannel channel, int bufferSize) {
+        super(Math.max(bufferSize, MIN_BUFFER_SIZE));
+        this.out = null;
+        this.channel = channel;
+    }
+
+    /**
+     * Writes a value to the stream, and flushes the buffer afterwards
+     * @param value The value to write
+     * @throws IOException If writing to the stream fails
+     */
+    public void write(Serializable value) throws IOException {
+        try {
+            value.writeTo(this);
+        } catch(UncheckedIOException e) {
+            throw e.getCause();
+        }
+        flush();
+    }
+
+    /**
+     * Writes all of the buffered data to the stream
+     * @throws IOException If writing to the stream fails
+     */
+    public void flush() throws IOException {
+        writeOut(toBytes(), 0, index);
+        index = 0;
+        if(out != null) out.flush();
+    }
+
+    @Override
+    protected boolean reserve(int length) {
+        if(index+length > toBytes().length) {
+            try {
+                writeOut(toBytes(), 0, index);
+                index = 0;
+            } catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        //Bulk writes bigger than the buffer are written a value at a time instead, which always fit after a flush
+        if(length > toBytes().length) return false;
+        return super.reserve(length);
+    }
+
+    @Override
+    public void addBytes(byte[] src, int offset, int length) {
+        if(length <= toBytes().length) {
+            super.addBytes(src, offset, length);
+            return;
+        }
+
+        //Too big for the buffer, so write it out directly
+        try {
+            writeOut(toBytes(), 0, index);
+            index = 0;
+            writeOut(src, offset, length);
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes a section of an array to the stream or channel
+     */
+    private void writeOut(byte[] src, int offset, int length) throws IOException {
+        if(length == 0) return;
+
+        if(out != null) {
+            out.write(src, offset, length);
+        } else {
+            ByteBuffer buffer = ByteBuffer.wrap(src, offset, length);
+            while(buffer.hasRemaining())
+                channel.write(buffer);
+        }
+    }
+
+}
@@ -16,6 +16,11 @@
  */
 package gio.ddb.serial2;
 
+import gio.ddb.serial2.types.PrimativeTypes;
+import gio.ddb.serial2.types.PrimativeTypes.Primatives;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
 /**
  * Base class for default serial types
  * 
@@ -27,32 +32,447 @@ public abstract class SEBase implements Serializable {
 	public static final byte[] HDEND = "HDRE".getBytes();
 	public static int HEADER_SIZE = DBSIG.length + 4 + Short.BYTES + HDEND.length;
 	public static int BASE_SIZE = Short.BYTES + Integer.BYTES;
+	/**
+	 * Size of a key index entry: the key hash and the offset of the entry
+	 */
+	public static final int INDEX_ENTRY_SIZE = Integer.BYTES + Integer.BYTES;
+	/**
+	 * Serialized versions smaller than this aren't cached. Set to Integer.MAX_VALUE to turn caching off
+	 */
+	public static int CACHE_THRESHOLD = 64;
 	
+    /**
+     * The block or list this is in. Used to pass size changes up to the root
+     * A value is only ever in one container (see adopt()), so every change reaches all of the containers above it
+     */
+    protected SEBase parent;
+    /**
+     * Serialized version from the last time this was serialized, or null if this or a child changed since
+     * Changes drop the caches all the way up the parent chain, which is only complete because values aren't shared.
+     * Each cached value keeps its own copy, so a document cached at every level takes more memory.
+     * The bytes and their format are swapped together, since values may be serialized on several threads at once
+     */
+    private volatile Cached cached;
+    
+    /**
+     * Called when the size or the contents of this or one of its children changes
+     * Drops the cached serialized version. Containers also adjust their size before passing the change on to their parent
+     * @param delta The change in size, in bytes
+     */
+    protected void sizeChanged(int delta) {
+        cached = null;
+        if(parent != null) parent.sizeChanged(delta);
+    }
+    
+    /**
+     * Checks if the serialized version of this is worth caching
+     * @return True for containers & strings, false for values that are as fast to write as to copy
+     */
+    protected boolean isCacheable() {
+        return false;
+    }
+    
+    /**
+     * Gets the cached serialized version
+     * @param format The wire format it must have been serialized in
+     * @return The cached serialized version (not a copy), or null if it isn't cached
+     */
+    byte[] getCached(SEFormat format) {
+        Cached current = cached;
+        return current != null && format.equals(current.format) ? current.bytes : null;
+    }
+    
+    /**
+     * Caches a freshly serialized version
+     * @param serialized The serialized version, which must not be modified afterwards
+     * @param format The wire format it was serialized in
+     * @return A copy to hand out if it was cached, otherwise the serialized version itself
+     */
+    byte[] keepCached(byte[] serialized, SEFormat format) {
+        return setCached(serialized, format) ? serialized.clone() : serialized;
+    }
+    
+    /**
+     * Caches a serialized version, if it is big enough
+     * @param serialized The serialized version, which must not be modified afterwards
+     * @param format The wire format it was serialized in
+     * @return True if it was cached
+     */
+    private boolean setCached(byte[] serialized, SEFormat format) {
+        if(!isCacheable() || serialized.length < CACHE_THRESHOLD) return false;
+        cached = new Cached(serialized, format);
+        return true;
+    }
+    
+    /**
+     * Drops the cached serialized version of this value only
+     */
+    void dropCached() {
+        cached = null;
+    }
+    
+    /**
+     * Gets a version of the value that won't change while it is written
+     * @return A copy for values that may be changed on other threads, otherwise the value itself
+     */
+    Serializable freeze() {
+        return this;
+    }
+    
+    /**
+     * A serialized version and the wire format it was serialized in
+     */
+    private static final class Cached {
+        
+        final byte[] bytes;
+        final SEFormat format;
+        
+        Cached(byte[] bytes, SEFormat format) {
+            this.bytes = bytes;
+            this.format = format;
+        }
+        
+    }
+    
+    /**
+     * Makes a value a child of a container
+     * Changes are only passed on to one parent, so a value that is already in a container
+     * (even the same one) is copied, and the copy is added instead.
+     * @param container The container the value is being added to
+     * @param value The value being added
+     * @return The value to put in the container
+     */
+    static Serializable adopt(SEBase container, Serializable value) {
+        if(!(value instanceof SEBase)) return value;
+        if(((SEBase) value).parent != null) value = copy(value);
+        
+        ((SEBase) value).parent = container;
+        //May have been cached as a root
+        ((SEBase) value).dropCached();
+        return value;
+    }
+    
+    /**
+     * Copies a value through its serialized version
+     * @param value The value to copy
+     * @return The copy, which isn't in a container. Values that aren't containers or strings are returned as is
+     */
+    static Serializable copy(Serializable value) {
+        if(!(value instanceof SEBase)) return value;
+        
+        byte[] serialized = value.getSerialized();
+        return deserializeValue(new ByteArrayParser(serialized), serialized.length);
+    }
+    
+    /**
+     * Removes a value from a container
+     * @param container The container the value was removed from
+     * @param value The value that was removed
+     */
+    static void orphan(SEBase container, Serializable value) {
+        if(value instanceof SEBase && ((SEBase) value).parent == container) ((SEBase) value).parent = null;
+    }
+	
+    /**
+     * Encodes a string as UTF-8, the encoding used for all serialized strings
+     * @param str The string to encode
+     * @return The encoded bytes of the string
+     */
+    public static byte[] encodeString(String str) {
+        return str.getBytes(StandardCharsets.UTF_8);
+    }
+    
     /**
      * Gets the size of the string when serialized
      * @param str The string to get the size of
      * @return The size of the string when serialized
      */
 	public static int getStringSize(String str) {
-		return str.getBytes().length+1+Short.BYTES;
+		return getStringSize(encodeString(str));
 	}
     
+    /**
+     * Gets the size of an already encoded string when serialized
+     * @param encoded The UTF-8 bytes of the string
+     * @return The size of the string when serialized
+     */
+    public static int getStringSize(byte[] encoded) {
+        return encoded.length+1+Short.BYTES;
+    }
+    
+    /**
+     * Writes an already encoded string
+     * @param dest The parser to write to
+     * @param encoded The UTF-8 bytes of the string
+     */
+    static void writeString(ByteArrayParser dest, byte[] encoded) {
+        dest.addShort((short)encoded.length);
+        dest.addBytes(encoded);
+        dest.addByte((byte)0);
+    }
+    
     /**
      * Parses / deserializes a string from a byte array
      * @param string The bytes from a serialized string
      * @return The parsed / deserialized string
      */
     public static String parseString(byte[] string) {
-        ByteArrayParser parser = new ByteArrayParser(string);
-        if(parser.getShort() >= string.length) return "";
+        return parseString(string, 0, string.length);
+    }
+    
+    /**
+     * Parses / deserializes a string in place
+     * @param src The array containing the serialized string
+     * @param offset The offset of the serialized string in the array
+     * @param limit The index the serialized string must end before
+     * @return The parsed / deserialized string, or an empty string if it is malformed
+     */
+    public static String parseString(byte[] src, int offset, int limit) {
+        if(offset < 0 || offset + Short.BYTES >= limit) return "";
+        int length = Byte.toUnsignedInt(src[offset]) | Byte.toUnsignedInt(src[offset+1]) << 8;
+        
+        if(offset + Short.BYTES + length >= limit) return "";
+        if(src[offset + Short.BYTES + length] != 0) return "";
+        
+        return new String(src, offset + Short.BYTES, length, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Hashes a key for the key index (32 bit FNV-1a of the UTF-8 bytes)
+     * @param key The UTF-8 bytes of the key
+     * @return The hash of the key
+     */
+    public static int hashKey(byte[] key) {
+        return hashKey(key, 0, key.length);
+    }
+    
+    /**
+     * Hashes a key for the key index, straight from a serialized version
+     * @param src The array holding the UTF-8 bytes of the key
+     * @param offset The offset of the key in the array
+     * @param length The length of the key
+     * @return The hash of the key
+     */
+    static int hashKey(byte[] src, int offset, int length) {
+        int hash = 0x811C9DC5;
+        for(int i = offset; i < offset + length; i++) {
+            hash ^= src[i] & 0xFF;
+            hash *= 0x01000193;
+        }
+        return hash;
+    }
+    
+    /**
+     * Sorts the key hashes of a block's entries, so entries can be found with findHash()
+     * @param hashes The hashes, in entry order
+     * @param count The amount of entries
+     * @return The hashes in the top half and the entry numbers in the bottom half, sorted by hash
+     */
+    static long[] sortHashes(int[] hashes, int count) {
+        long[] sorted = new long[count];
+        for(int i = 0; i < count; i++)
+            sorted[i] = (long) hashes[i] << 32 | i;
+        Arrays.sort(sorted);
+        return sorted;
+    }
+    
+    /**
+     * Finds the first entry with a hash, in hashes sorted by sortHashes()
+     * The following positions hold the other entries with the same hash
+     * @param sorted The sorted hashes
+     * @param hash The hash to look for
+     * @return The position of the first entry with the hash, or the position it would be at if there is none
+     */
+    static int findHash(long[] sorted, int hash) {
+        int low = 0, high = sorted.length;
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+            if((int) (sorted[mid] >> 32) < hash) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+    
+    /**
+     * Gets the size of a block's key index
+     * @param count The amount of entries in the block
+     * @param format The wire format
+     * @return The size of the key index, or zero if the format doesn't have one
+     */
+    static int getIndexSize(int count, SEFormat format) {
+        if(!format.isIndexed()) return 0;
+        return (format.isCompact() ? ByteArrayParser.varIntSize(count) : Integer.BYTES) + count * INDEX_ENTRY_SIZE;
+    }
+    
+    /**
+     * Skips over a block's key index, if the parser's format has one
+     * @param src The parser to read from, with the index pointing at the end of the string table
+     * @param limit The end of the block's data
+     */
+    static void skipIndex(ByteArrayParser src, int limit) {
+        if(!src.getFormat().isIndexed()) return;
+        if(src.index + (src.getFormat().isCompact() ? 1 : Integer.BYTES) > limit) {
+            src.index = limit;
+            return;
+        }
+        
+        int count = readField(src);
+        if(count < 0 || count > (limit - src.index) / INDEX_ENTRY_SIZE) src.index = limit;
+        else src.index += count * INDEX_ENTRY_SIZE;
+    }
+    
+    /**
+     * Gets the size of a compact frame, which depends on the size of its own varint size field
+     * @param contentSize The size of the frame without the size field
+     * @return The size of the frame, including the size field
+     */
+    static int getCompactFrameSize(int contentSize) {
+        int size = contentSize + 1;
+        while(contentSize + ByteArrayParser.varIntSize(size) > size) size++;
+        return size;
+    }
+    
+    /**
+     * Writes the size field of a frame in the parser's format
+     * @param dest The parser to write to
+     * @param size The size of the frame
+     */
+    static void writeFrameSize(ByteArrayParser dest, int size) {
+        if(dest.getFormat().isCompact()) dest.addVarInt(size);
+        else dest.addInt(size);
+    }
+    
+    /**
+     * Reads a size, length or offset field in the parser's format, moving the index past it
+     * @param src The parser to read from, with the index pointing at the field
+     * @return The value of the field
+     */
+    static int readField(ByteArrayParser src) {
+        if(src.getFormat().isCompact()) return src.readVarInt();
+        
+        int value = src.getInt();
+        src.index += Integer.BYTES;
+        return value;
+    }
+    
+    /**
+     * Reads the key field of a block entry in the parser's format, moving the index past it
+     * @param src The parser to read from, with the index pointing at the key field
+     * @param stringsStart The start of the block's string table
+     * @param stringsEnd The end of the block's string table
+     * @return The key, or an empty string if it is malformed
+     */
+    static String readKey(ByteArrayParser src, int stringsStart, int stringsEnd) {
+        int keyField = readField(src);
+        SEKeyDictionary dictionary = src.getFormat().getDictionary();
+        
+        if(dictionary == null) return parseString(src.toBytes(), keyField + stringsStart, stringsEnd);
+        if((keyField & 1) != 0) return dictionary.getKey(keyField >>> 1);
+        return parseString(src.toBytes(), (keyField >>> 1) + stringsStart, stringsEnd);
+    }
+    
+    /**
+     * Writes a value inside of a container
+     * Lets an SEParallelEncoder write large values on their own tasks
+     * @param dest The parser to write to
+     * @param value The value to write
+     */
+    static void writeValue(ByteArrayParser dest, Serializable value) {
+        if(dest instanceof SEParallelEncoder.ForkingParser) ((SEParallelEncoder.ForkingParser) dest).write(value);
+        else writeCached(dest, value);
+    }
+    
+    /**
+     * Writes a value, copying its cached serialized version if it hasn't changed since it was cached
+     * The value is cached afterwards, unless the parser can't hold on to all of it
+     * @param dest The parser to write to
+     * @param value The value to write
+     */
+    static void writeCached(ByteArrayParser dest, Serializable value) {
+        if(!(value instanceof SEBase) || !((SEBase) value).isCacheable()) {
+            value.writeTo(dest);
+            return;
+        }
         
-        parser.index = parser.getShort()+2;
-        if(parser.getByte() != 0) return "";
+        SEBase base = (SEBase) value;
+        SEFormat format = dest.getFormat();
+        byte[] serialized = base.getCached(format);
+        if(serialized != null) {
+            dest.addBytes(serialized);
+            return;
+        }
+        
+        int start = dest.index;
+        value.writeTo(dest);
+        
+        //Streams flush the array, and forked regions are written later
+        if(dest instanceof ByteStreamParser || dest instanceof SEParallelEncoder.ForkingParser || dest.isTruncated()) return;
+        if(dest.index - start >= CACHE_THRESHOLD) base.setCached(Arrays.copyOfRange(dest.toBytes(), start, dest.index), format);
+    }
+    
+    /**
+     * Gets the size of a serialized value, including the type
+     * @param src The parser containing the value, with the index pointing at the start of it
+     * @return The size of the serialized value, in bytes
+     */
+    static int getSerialSize(ByteArrayParser src) {
+        short type = src.getShort();
+        int start = src.index;
+        
+        if((type & 0xFF) == SEType.PRIMATIVE.value()) {
+            int primative = type >> 8;
+            if(primative < 0 || primative >= Primatives.values().length) return -1;
+            if(!PrimativeTypes.isVarint(Primatives.values()[primative], src.getFormat()))
+                return Short.BYTES + Primatives.values()[primative].size;
+            
+            src.index += Short.BYTES;
+            src.readVarLong();
+            int size = src.index - start;
+            src.index = start;
+            return size;
+        }
+        
+        if(start + SEBase.BASE_SIZE > src.toBytes().length) return -1;
+        src.index += Short.BYTES;
+        int size = readField(src);
+        src.index = start;
+        return size;
+    }
+    
+    /**
+     * Deserializes a value in place
+     * The index of the parser is left in an undefined place
+     * @param src The parser containing the value, with the index pointing at the start of it
+     * @param length The size of the serialized value, from getSerialSize()
+     * @return The deserialized value, or null if the type is unknown
+     */
+    static Serializable deserializeValue(ByteArrayParser src, int length) {
+        short type = src.getShort();
+        //Element type of arrays, or the type of primitives
+        int subtype = type >> 8;
+        boolean knownSubtype = subtype >= 0 && subtype < Primatives.values().length;
         
-        parser.index = 0;
-        short length = parser.getShort();
+        if(type == SEType.BLOCK.value()) {
+            return new SEBlock(src, length);
+        } else if(type == SEType.LIST.value()) {
+            return new SEList(src, length);
+        } else if(type == SEType.STRING.value()) {
+            return new SEString(src, length);
+        } else if((type & 0xFF) == SEType.ARRAY.value() && knownSubtype) {
+            switch(Primatives.values()[subtype]) {
+                case BYTE: return new SEByteList(src, length);
+                case INT: return new SEIntList(src, length);
+                case LONG: return new SELongList(src, length);
+                case DOUBLE: return new SEDoubleList(src, length);
+                default: return null;
+            }
+        } else if((type & 0xFF) == SEType.PRIMATIVE.value() && knownSubtype) {
+            Primatives primative = Primatives.values()[subtype];
+            return PrimativeTypes.fromBits(primative, PrimativeTypes.readBits(src, src.index + Short.BYTES, primative));
+        }
         
-        return new String(string, 2, length);
+        //Just skip
+        return null;
     }
 	
 }
@@ -16,12 +16,14 @@
  */
 package gio.ddb.serial2;
 
+import gio.ddb.serial2.compression.Codec;
 import gio.ddb.serial2.types.PrimativeTypes;
 import gio.ddb.serial2.types.PrimativeTypes.Primatives;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedHashMap;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.function.BiConsumer;
 
 /**
  * Block for the base of all DB structures
@@ -31,36 +33,105 @@ public class SEBlock extends SEBase {
 	
     public static final byte[] FILE_FOOTER = "THIS IS THE END!".getBytes();
 	/**
-     * Calculated size (modified with each recalculateSize() call)
+     * Calculated size of the block, excluding the root header & footer
+     * Kept up to date as values are added, replaced or resized
      */
-    private int calcSize = 0;
+    private int calcSize = SEBase.BASE_SIZE + Integer.BYTES;
     /**
-     * The next offset into the string table
+     * Size in the last non-default format asked for (excluding the root header & footer), or null if it needs to be recalculated
      */
-    private int currentOffset = 0;
+    private SEFormat sizeFormat;
+    private int formatSize;
     /**
-     * The amount of times getSerialized() is called. Used to prevent recursive serializations
+     * The thread writing the block, if any. Used to prevent recursive serializations
+     * A count would make a block that is written on two threads at once skip itself
      */
-    private int serializationAccesses = 0;
+    private volatile Thread serializingThread;
     /**
      * Whether this block has a parent. Used to determine if the is the root block or not
      */
 	protected boolean hasParent = false;
     /**
-     * The map of values
+     * The codec used to compress the block when it is the root block, or null if uncompressed
      */
-	protected Map<String, Serializable> valueMap;
+    private Codec codec;
     /**
-     * The map of offsets into the string table
+     * The wire format used when the block is serialized as the root block
      */
-    private final Map<String, Integer> offsetMap;
+    private SEFormat format = SEFormat.DEFAULT;
+    /**
+     * Marks a slot as holding an object instead of a primitive
+     */
+    private static final byte OBJECT_SLOT = -1;
+    /**
+     * The map of names to slots. Slots are in the same order as the string table
+     */
+    private final Map<String, Integer> slotMap;
+    /**
+     * The amount of slots in use
+     */
+    private int slotCount = 0;
+    /* Slot storage. Primitives are kept as raw bits instead of as objects */
+    private String[] slotNames;
+    /* UTF-8 bytes of the names, encoded once when the slot is claimed */
+    private byte[][] slotKeys;
+    /* Dictionary IDs of the names (or -1), for the dictionary they were looked up in */
+    private SEKeyDictionary idDictionary;
+    private int[] slotKeyIds = new int[0];
+    private int idCount = 0;
+    private byte[] slotTypes;
+    private long[] slotBits;
+    private Serializable[] slotValues;
 
     /**
      * Creates a new SEBlock
      */
     public SEBlock() {
-        this.valueMap = new LinkedHashMap<>();
-        this.offsetMap = new LinkedHashMap<>();
+        this.slotMap = new HashMap<>();
+        this.slotNames = new String[8];
+        this.slotKeys = new byte[8][];
+        this.slotTypes = new byte[8];
+        this.slotBits = new long[8];
+        this.slotValues = new Serializable[8];
+    }
+    
+    /**
+     * Creates a copy of a block that shares its values
+     * The slots are copied, so later changes to either block don't affect the other
+     * @param other The block to copy
+     * @param adopt Whether the copy becomes the parent of the values. Otherwise they keep their parent,
+     *              and values that can change on other threads are replaced by copies of their own
+     */
+    SEBlock(SEBlock other, boolean adopt) {
+        this.slotMap = new HashMap<>(other.slotMap);
+        this.slotNames = other.slotNames.clone();
+        this.slotKeys = other.slotKeys.clone();
+        this.slotTypes = other.slotTypes.clone();
+        this.slotBits = other.slotBits.clone();
+        this.slotValues = other.slotValues.clone();
+        this.slotCount = other.slotCount;
+        this.calcSize = other.calcSize;
+        this.hasParent = other.hasParent;
+        this.codec = other.codec;
+        this.format = other.format;
+        
+        boolean frozen = false;
+        for(int slot = 0; slot < slotCount; slot++) {
+            if(slotTypes[slot] != OBJECT_SLOT || slotValues[slot] == null) continue;
+            
+            if(adopt) {
+                //Moved out of the other block, so they don't have to be copied
+                SEBase.orphan(other, slotValues[slot]);
+                slotValues[slot] = SEBase.adopt(this, slotValues[slot]);
+            } else {
+                Serializable value = slotValues[slot];
+                if(value instanceof SEBase) slotValues[slot] = ((SEBase) value).freeze();
+                frozen |= slotValues[slot] != value;
+            }
+        }
+        
+        //Their sizes may have changed since they were last passed on
+        if(frozen) recalculateSize();
     }
     
     /**
@@ -68,36 +139,77 @@ public class SEBlock extends SEBase {
      * @param src The array to get the data from
      */
     public SEBlock(byte[] src) {
-        this.valueMap = new LinkedHashMap<>();
-        this.offsetMap = new LinkedHashMap<>();
-        deserialize(src);
+        this(src, 0, src.length);
+    }
+    
+    /**
+     * Creates a new SEBlock from a serialized version, reading it in place
+     * @param src The array to get the data from
+     * @param offset The offset of the serialized block in the array
+     * @param length The length of the serialized block
+     */
+    public SEBlock(byte[] src, int offset, int length) {
+        this(src, offset, length, null);
+    }
+    
+    /**
+     * Creates a new SEBlock from a serialized version that may use a shared key dictionary
+     * @param src The array to get the data from
+     * @param dictionary The dictionary the block was serialized with, or null if there is none
+     */
+    public SEBlock(byte[] src, SEKeyDictionary dictionary) {
+        this(src, 0, src.length, dictionary);
+    }
+    
+    /**
+     * Creates a new SEBlock from a serialized version that may use a shared key dictionary, reading it in place
+     * @param src The array to get the data from
+     * @param offset The offset of the serialized block in the array
+     * @param length The length of the serialized block
+     * @param dictionary The dictionary the block was serialized with, or null if there is none
+     */
+    public SEBlock(byte[] src, int offset, int length, SEKeyDictionary dictionary) {
+        this();
+        ByteArrayParser parser = new ByteArrayParser(src);
+        parser.setFormat(SEFormat.DEFAULT.withDictionary(dictionary));
+        parser.index = offset;
+        deserialize(parser, length);
+    }
+    
+    /**
+     * Creates a new SEBlock from a parser, reading it in place
+     * The index of the parser is left in an undefined place
+     * @param src The parser containing the block, with the index pointing at the start of it
+     * @param length The length of the serialized block
+     */
+    SEBlock(ByteArrayParser src, int length) {
+        this();
+        deserialize(src, length);
     }
     
     /**
      * Adds an SEBlock
-     * Will not add if an attempt is made to add an SEBlock that is the current SEBlock
+     * Will not add if an attempt is made to add an SEBlock that is the current SEBlock.
+     * A block that is already in a block or list is copied, and the copy is added instead.
+     * Later changes to the original then don't reach this block
      * @param name The name to map the block to
      * @param block The block to add
      */
 	public void setValue(String name, SEBlock block) {
 		if(block == this) return;
 		block.hasParent = true;
-		valueMap.put(name, block);
-        offsetMap.put(name, currentOffset);
-        currentOffset += SEBase.getStringSize(name);
-        recalculateSize();
+		putValue(name, block);
 	}
     
     /**
      * Adds an SEList
+     * A list that is already in a block or list is copied, and the copy is added instead.
+     * Later changes to the original then don't reach this block
      * @param name The name to map the list to
      * @param list The list to add
      */
     public void setValue(String name, SEList list) {
-		valueMap.put(name, list);
-        offsetMap.put(name, currentOffset);
-        currentOffset += SEBase.getStringSize(name);
-        recalculateSize();
+		putValue(name, list);
 	}
 	
     /**
@@ -106,10 +218,7 @@ public class SEBlock extends SEBase {
      * @param value The value to add
      */
     public void setValue(String name, boolean value) {
-		valueMap.put(name, new PrimativeTypes.BooleanValue(value));
-        offsetMap.put(name, currentOffset);
-        currentOffset += SEBase.getStringSize(name);
-		recalculateSize();
+		putBits(name, Primatives.BOOLEAN, value ? 1 : 0);
 	}
 	
     /**
@@ -118,10 +227,7 @@ public class SEBlock extends SEBase {
      * @param value The value to add
      */
 	public void setValue(String name, byte value) {
-		valueMap.put(name, new PrimativeTypes.ByteValue(value));
-        offsetMap.put(name, currentOffset);
-        currentOffset += SEBase.getStringSize(name);
-		recalculateSize();
+		putBits(name, Primatives.BYTE, value & 0xFFL);
 	}
 	
     /**
@@ -130,10 +236,7 @@ public class SEBlock extends SEBase {
      * @param value The value to add
      */
 	public void setValue(String name, short value) {
-		valueMap.put(name, new PrimativeTypes.ShortValue(value));
-        offsetMap.put(name, currentOffset);
-        currentOffset += SEBase.getStringSize(name);
-		recalculateSize();
+		putBits(name, Primatives.SHORT, value & 0xFFFFL);
 	}
 	
     /**
@@ -142,10 +245,7 @@ public class SEBlock extends SEBase {
      * @param value The value to add
      */
 	public void setValue(String name, char value) {
-		valueMap.put(name, new PrimativeTypes.CharValue(value));
-        offsetMap.put(name, currentOffset);
-        currentOffset += SEBase.getStringSize(name);
-		recalculateSize();
+		putBits(name, Primatives.CHAR, value);
 	}
 	
     /**
@@ -154,10 +254,7 @@ public class SEBlock extends SEBase {
      * @param value The value to add
      */
 	public void setValue(String name, int value) {
-		valueMap.put(name, new PrimativeTypes.IntValue(value));
-        offsetMap.put(name, currentOffset);
-        currentOffset += SEBase.getStringSize(name);
-		recalculateSize();
+		putBits(name, Primatives.INT, value & 0xFFFFFFFFL);
 	}
 	
     /**
@@ -166,10 +263,7 @@ public class SEBlock extends SEBase {
      * @param value The value to add
      */
 	public void setValue(String name, long value) {
-		valueMap.put(name, new PrimativeTypes.LongValue(value));
-        offsetMap.put(name, currentOffset);
-        currentOffset += SEBase.getStringSize(name);
-		recalculateSize();
+		putBits(name, Primatives.LONG, value);
 	}
 	
     /**
@@ -178,10 +272,7 @@ public class SEBlock extends SEBase {
      * @param value The value to add
      */
 	public void setValue(String name, float value) {
-		valueMap.put(name, new PrimativeTypes.FloatValue(value));
-        offsetMap.put(name, currentOffset);
-        currentOffset += SEBase.getStringSize(name);
-		recalculateSize();
+		putBits(name, Primatives.FLOAT, Float.floatToRawIntBits(value) & 0xFFFFFFFFL);
 	}
 	
     /**
@@ -190,10 +281,7 @@ public class SEBlock extends SEBase {
      * @param value The value to add
      */
 	public void setValue(String name, double value) {
-		valueMap.put(name, new PrimativeTypes.DoubleValue(value));
-        offsetMap.put(name, currentOffset);
-        currentOffset += SEBase.getStringSize(name);
-		recalculateSize();
+		putBits(name, Primatives.DOUBLE, Double.doubleToRawLongBits(value));
 	}
     
     /**
@@ -202,24 +290,193 @@ public class SEBlock extends SEBase {
      * @param value The value to add
      */
     public void setValue(String name, String value) {
-		valueMap.put(name, new SEString(value));
-        offsetMap.put(name, currentOffset);
-        currentOffset += SEBase.getStringSize(name);
-		recalculateSize();
+		putValue(name, new SEString(value));
 	}
     
     /**
      * Adds a generic Serializable object
+     * Blocks, lists and strings that are already in a block or list are copied, and the copy is added instead.
+     * Later changes to the original then don't reach this block
      * @param name The name to map the value to
      * @param value The value to add
      */
     public void setValue(String name, Serializable value) {
         if(value == null || name.isEmpty()) return;
-        if(value.getClass() == SEBlock.class) setValue(name, (SEBlock)value);
-        valueMap.put(name, value);
-        offsetMap.put(name, currentOffset);
-        currentOffset += SEBase.getStringSize(name);
-		recalculateSize();
+        if(value instanceof SEBlock) {
+            setValue(name, (SEBlock)value);
+            return;
+        }
+		putValue(name, value);
+    }
+	
+    /**
+     * Finds the slot a name is mapped to
+     * @param name The name to look for
+     * @return The slot, or -1 if the name isn't mapped
+     */
+    protected int getSlot(String name) {
+        Integer slot = slotMap.get(name);
+        return slot == null ? -1 : slot;
+    }
+    
+    /**
+     * Finds the slot for a name, adding a new slot (and the name to the string table) if needed
+     * @param name The name to look for
+     * @return The slot the name is mapped to
+     */
+    private int claimSlot(String name) {
+        int slot = getSlot(name);
+        if(slot >= 0) return slot;
+        
+        if(slotCount == slotNames.length) {
+            int capacity = slotCount * 2;
+            slotNames = Arrays.copyOf(slotNames, capacity);
+            slotKeys = Arrays.copyOf(slotKeys, capacity);
+            slotTypes = Arrays.copyOf(slotTypes, capacity);
+            slotBits = Arrays.copyOf(slotBits, capacity);
+            slotValues = Arrays.copyOf(slotValues, capacity);
+        }
+        
+        slot = slotCount++;
+        slotMap.put(name, slot);
+        slotNames[slot] = name;
+        slotKeys[slot] = SEBase.encodeString(name);
+        slotTypes[slot] = OBJECT_SLOT;
+        slotValues[slot] = null;
+        sizeChanged(SEBase.getStringSize(slotKeys[slot]) + Integer.BYTES);
+        return slot;
+    }
+    
+    /**
+     * Gets the serialized size of the value in a slot
+     * @param slot The slot to get the size of
+     * @return The serialized size, or zero if the slot is empty
+     */
+    private int getSlotSize(int slot) {
+        if(slotTypes[slot] != OBJECT_SLOT) return Short.BYTES + Primatives.values()[slotTypes[slot]].size;
+        return slotValues[slot] == null ? 0 : slotValues[slot].getSize();
+    }
+    
+    /**
+     * Gets the serialized size of the value in a slot in a wire format
+     * @param slot The slot to get the size of
+     * @param format The wire format
+     * @return The serialized size, or zero if the slot is empty
+     */
+    private int getSlotSize(int slot, SEFormat format) {
+        if(slotTypes[slot] != OBJECT_SLOT) return PrimativeTypes.getSize(Primatives.values()[slotTypes[slot]], slotBits[slot], format);
+        return slotValues[slot] == null ? 0 : slotValues[slot].getSize(format);
+    }
+    
+    /**
+     * Maps a primitive value to a name, adding the name to the string table
+     * @param name The name to map the value to
+     * @param type The type of the primitive
+     * @param bits The raw bits of the value
+     */
+    protected void putBits(String name, Primatives type, long bits) {
+        int slot = claimSlot(name);
+        int oldSize = getSlotSize(slot);
+        
+        if(slotTypes[slot] == OBJECT_SLOT) SEBase.orphan(this, slotValues[slot]);
+        slotTypes[slot] = (byte) type.ordinal();
+        slotBits[slot] = bits;
+        slotValues[slot] = null;
+        
+        sizeChanged(getSlotSize(slot) - oldSize);
+    }
+    
+    /**
+     * Maps a value to a name, adding the name to the string table
+     * @param name The name to map the value to
+     * @param value The value to add
+     */
+    protected void putValue(String name, Serializable value) {
+        Primatives type = PrimativeTypes.getPrimative(value);
+        if(type != null) {
+            putBits(name, type, PrimativeTypes.toBits(value));
+            return;
+        }
+        
+        int slot = claimSlot(name);
+        int oldSize = getSlotSize(slot);
+        
+        if(slotTypes[slot] == OBJECT_SLOT) SEBase.orphan(this, slotValues[slot]);
+        slotTypes[slot] = OBJECT_SLOT;
+        slotValues[slot] = SEBase.adopt(this, value);
+        
+        sizeChanged(getSlotSize(slot) - oldSize);
+    }
+    
+    /**
+     * Gets the raw bits of a primitive value mapped to a name
+     * @param name The name to get the value from
+     * @param type The type the value must be
+     * @return The raw bits of the value, or zero if none was found or the types don't match
+     */
+    protected long getBits(String name, Primatives type) {
+        int slot = getSlot(name);
+        if(slot < 0 || slotTypes[slot] != type.ordinal()) return 0;
+        return slotBits[slot];
+    }
+    
+    /**
+     * Gets the value mapped to a name
+     * Primitive values are returned as new PrimativeTypes objects
+     * @param name The name to get the value from
+     * @return The value, or null if none was found
+     */
+    protected Serializable getValue(String name) {
+        int slot = getSlot(name);
+        if(slot < 0) return null;
+        if(slotTypes[slot] != OBJECT_SLOT) return PrimativeTypes.fromBits(Primatives.values()[slotTypes[slot]], slotBits[slot]);
+        return slotValues[slot];
+    }
+
+    /**
+     * Removes a name and the value mapped to it, along with the name's string table entry
+     * @param name The name to remove
+     */
+    protected void removeValue(String name) {
+        int slot = getSlot(name);
+        if(slot < 0) return;
+        int delta = getSlotSize(slot) + SEBase.getStringSize(slotKeys[slot]) + Integer.BYTES;
+
+        if(slotTypes[slot] == OBJECT_SLOT) SEBase.orphan(this, slotValues[slot]);
+        slotMap.remove(name);
+        slotCount--;
+
+        //Shift the later slots down, keeping the string table in order
+        int moved = slotCount - slot;
+        System.arraycopy(slotNames, slot+1, slotNames, slot, moved);
+        System.arraycopy(slotKeys, slot+1, slotKeys, slot, moved);
+        System.arraycopy(slotTypes, slot+1, slotTypes, slot, moved);
+        System.arraycopy(slotBits, slot+1, slotBits, slot, moved);
+        System.arraycopy(slotValues, slot+1, slotValues, slot, moved);
+        slotNames[slotCount] = null;
+        slotKeys[slotCount] = null;
+        slotValues[slotCount] = null;
+        for(int i = slot; i < slotCount; i++) slotMap.put(slotNames[i], i);
+        idCount = Math.min(idCount, slot);
+
+        sizeChanged(-delta);
+    }
+
+    /**
+     * Removes a name and the value mapped to it
+     * @param name The name to remove
+     */
+    public void remove(String name) {
+        if(name == null) return;
+        removeValue(name);
+    }
+
+    /**
+     * Gets the names that have values mapped to them, in the order they are serialized
+     * @return A copy of the names
+     */
+    public List<String> getNames() {
+        return new ArrayList<>(Arrays.asList(slotNames).subList(0, slotCount));
     }
 	
     /**
@@ -228,10 +485,7 @@ public class SEBlock extends SEBase {
      * @return A boolean value, or false if none was found
      */
 	public boolean getBoolean(String name) {
-		if(valueMap.get(name) == null || valueMap.get(name).getClass() != PrimativeTypes.BooleanValue.class)
-			return false;
-		else
-			return ((PrimativeTypes.BooleanValue) valueMap.get(name)).value;
+		return getBits(name, Primatives.BOOLEAN) != 0;
 	}
 	
     /**
@@ -240,10 +494,7 @@ public class SEBlock extends SEBase {
      * @return A byte value, or false if none was found
      */
 	public byte getByte(String name) {
-		if(valueMap.get(name) == null || valueMap.get(name).getClass() != PrimativeTypes.ByteValue.class)
-			return (byte)0;
-		else
-			return ((PrimativeTypes.ByteValue) valueMap.get(name)).value;
+		return (byte) getBits(name, Primatives.BYTE);
 	}
 	
     /**
@@ -252,10 +503,7 @@ public class SEBlock extends SEBase {
      * @return A char value, or false if none was found
      */
 	public char getChar(String name) {
-		if(valueMap.get(name) == null || valueMap.get(name).getClass() != PrimativeTypes.CharValue.class)
-			return '\0';
-		else
-			return ((PrimativeTypes.CharValue) valueMap.get(name)).value;
+		return (char) getBits(name, Primatives.CHAR);
 	}
 	
     /**
@@ -264,10 +512,7 @@ public class SEBlock extends SEBase {
      * @return A short value, or false if none was found
      */
 	public short getShort(String name) {
-		if(valueMap.get(name) == null || valueMap.get(name).getClass() != PrimativeTypes.ShortValue.class)
-			return (short)0;
-		else
-			return ((PrimativeTypes.ShortValue) valueMap.get(name)).value;
+		return (short) getBits(name, Primatives.SHORT);
 	}
 	
     /**
@@ -276,10 +521,7 @@ public class SEBlock extends SEBase {
      * @return An integer value, or false if none was found
      */
 	public int getInt(String name) {
-		if(valueMap.get(name) == null || valueMap.get(name).getClass() != PrimativeTypes.IntValue.class)
-			return 0;
-		else
-			return ((PrimativeTypes.IntValue) valueMap.get(name)).value;
+		return (int) getBits(name, Primatives.INT);
 	}
 	
     /**
@@ -288,10 +530,7 @@ public class SEBlock extends SEBase {
      * @return A long value, or false if none was found
      */
 	public long getLong(String name) {
-		if(valueMap.get(name) == null || valueMap.get(name).getClass() != PrimativeTypes.LongValue.class)
-			return 0L;
-		else
-			return ((PrimativeTypes.LongValue) valueMap.get(name)).value;
+		return getBits(name, Primatives.LONG);
 	}
 	
     /**
@@ -300,10 +539,7 @@ public class SEBlock extends SEBase {
      * @return A float value, or false if none was found
      */
 	public float getFloat(String name) {
-		if(valueMap.get(name) == null || valueMap.get(name).getClass() != PrimativeTypes.FloatValue.class)
-			return 0f;
-		else
-			return ((PrimativeTypes.FloatValue) valueMap.get(name)).value;
+		return Float.intBitsToFloat((int) getBits(name, Primatives.FLOAT));
 	}
 	
     /**
@@ -312,10 +548,7 @@ public class SEBlock extends SEBase {
      * @return A double value, or false if none was found
      */
 	public double getDouble(String name) {
-		if(valueMap.get(name) == null || valueMap.get(name).getClass() != PrimativeTypes.DoubleValue.class)
-			return 0d;
-		else
-			return ((PrimativeTypes.DoubleValue) valueMap.get(name)).value;
+		return Double.longBitsToDouble(getBits(name, Primatives.DOUBLE));
 	}
     
     /**
@@ -324,10 +557,11 @@ public class SEBlock extends SEBase {
      * @return A string value, or an empty string if none was found
      */
     public String getString(String name) {
-		if(valueMap.get(name) == null || valueMap.get(name).getClass() != SEString.class)
+		Serializable value = getValue(name);
+		if(!(value instanceof SEString))
 			return "";
 		else
-			return ((SEString) valueMap.get(name)).value;
+			return ((SEString) value).getValue();
 	}
     
     /**
@@ -336,10 +570,11 @@ public class SEBlock extends SEBase {
      * @return An SEBlock value, or null if none was found
      */
 	public SEBlock getBlock(String name) {
-		if(valueMap.get(name) == null || valueMap.get(name).getClass() != SEBlock.class)
+		Serializable value = getValue(name);
+		if(!(value instanceof SEBlock))
 			return null;
 		else
-			return (SEBlock) valueMap.get(name);
+			return (SEBlock) value;
 	}
     
     /**
@@ -348,209 +583,658 @@ public class SEBlock extends SEBase {
      * @return An SEList value, or null if none was found
      */
     public SEList getList(String name) {
-		if(valueMap.get(name) == null || valueMap.get(name).getClass() != SEList.class)
+		Serializable value = getValue(name);
+		if(!(value instanceof SEList))
+			return null;
+		else
+			return (SEList) value;
+	}
+	
+    /**
+     * Gets an SEByteList from a string
+     * @param name The name to get the value from
+     * @return An SEByteList value, or null if none was found
+     */
+    public SEByteList getByteList(String name) {
+		Serializable value = getValue(name);
+		if(!(value instanceof SEByteList))
+			return null;
+		else
+			return (SEByteList) value;
+	}
+	
+    /**
+     * Gets an SEIntList from a string
+     * @param name The name to get the value from
+     * @return An SEIntList value, or null if none was found
+     */
+    public SEIntList getIntList(String name) {
+		Serializable value = getValue(name);
+		if(!(value instanceof SEIntList))
+			return null;
+		else
+			return (SEIntList) value;
+	}
+	
+    /**
+     * Gets an SELongList from a string
+     * @param name The name to get the value from
+     * @return An SELongList value, or null if none was found
+     */
+    public SELongList getLongList(String name) {
+		Serializable value = getValue(name);
+		if(!(value instanceof SELongList))
+			return null;
+		else
+			return (SELongList) value;
+	}
+	
+    /**
+     * Gets an SEDoubleList from a string
+     * @param name The name to get the value from
+     * @return An SEDoubleList value, or null if none was found
+     */
+    public SEDoubleList getDoubleList(String name) {
+		Serializable value = getValue(name);
+		if(!(value instanceof SEDoubleList))
 			return null;
 		else
-			return (SEList) valueMap.get(name);
+			return (SEDoubleList) value;
 	}
 	
+    /**
+     * Sets the codec used to compress the block when it is serialized as the root block
+     * @param codec The codec to use, or null to leave the block uncompressed
+     */
+    public void setCodec(Codec codec) {
+        this.codec = codec;
+        dropCached();
+    }
+    
+    /**
+     * Gets the codec used to compress the block when it is serialized as the root block
+     * @return The codec, or null if the block is uncompressed
+     */
+    public Codec getCodec() {
+        return codec;
+    }
+    
+    /**
+     * Sets the wire format used when the block is serialized as the root block
+     * Nested values are always written in the format of their root block
+     * @param format The format to use
+     */
+    public void setFormat(SEFormat format) {
+        this.format = format;
+        dropCached();
+    }
+    
+    /**
+     * Gets the wire format used when the block is serialized as the root block
+     * @return The format
+     */
+    public SEFormat getFormat() {
+        return format;
+    }
+    
 	@Override
 	public short getType() {
 		return hasParent ? SEType.BLOCK.value() : SEType.ROOT_BLOCK.value();
 	}
     
     /**
-     * Recalculates calcSize
+     * Recalculates calcSize from scratch
      */
 	protected void recalculateSize() {
+        int oldSize = calcSize;
 		calcSize = SEBase.BASE_SIZE + Integer.BYTES;
-		valueMap.forEach(new BiConsumer<String, Serializable>() {
-            @Override
-			public void accept(String name, Serializable value) {
-				calcSize += SEBase.getStringSize(name) + value.getSize() + Integer.BYTES;
-			}
-		});
+        sizeFormat = null;
+		for(int slot = 0; slot < slotCount; slot++) {
+			calcSize += SEBase.getStringSize(slotKeys[slot]) + getSlotSize(slot) + Integer.BYTES;
+		}
+        super.sizeChanged(calcSize - oldSize);
 	}
+    
+    @Override
+    protected void sizeChanged(int delta) {
+        adjustSize(delta);
+        super.sizeChanged(delta);
+    }
+    
+    /**
+     * Adjusts the block's own sizes for a change, without passing it on to the parent
+     * @param delta The change in size, in bytes
+     */
+    void adjustSize(int delta) {
+        //Other formats' sizes can change even if the default size doesn't
+        calcSize += delta;
+        sizeFormat = null;
+    }
+    
+    @Override
+    protected boolean isCacheable() {
+        return true;
+    }
 	
+	/**
+     * Gets the size of the block when serialized
+     * If the block is compressed, this is the size before compression
+     * @return The size of the block
+     */
 	@Override
 	public int getSize() {
-        if(calcSize == 0) recalculateSize();
 		return calcSize + (hasParent ? 0 : SEBase.HEADER_SIZE + FILE_FOOTER.length);
 	}
+    
+	@Override
+	public int getSize(SEFormat format) {
+        if(format.isDefault()) return getSize();
+		return getFrameSize(format) + (hasParent ? 0 : SEBase.HEADER_SIZE + FILE_FOOTER.length);
+	}
+    
+    /**
+     * Gets the size of the block in a format, excluding the root header & footer
+     * @param format The wire format
+     * @return The size of the block
+     */
+    private int getFrameSize(SEFormat format) {
+        if(format.isDefault()) return calcSize;
+        if(format.equals(sizeFormat)) return formatSize;
+        
+        boolean compact = format.isCompact();
+        int[] keyIds = getKeyIds(format.getDictionary());
+        int stringSize = 0;
+        int entrySize = 0;
+        for(int slot = 0; slot < slotCount; slot++) {
+            int keyField = getKeyField(slot, keyIds, stringSize);
+            if(keyIds == null || keyIds[slot] < 0) stringSize += SEBase.getStringSize(slotKeys[slot]);
+            entrySize += (compact ? ByteArrayParser.varIntSize(keyField) : Integer.BYTES) + getSlotSize(slot, format);
+        }
+        
+        entrySize += SEBase.getIndexSize(slotCount, format);
+        if(compact)
+            formatSize = SEBase.getCompactFrameSize(Short.BYTES + ByteArrayParser.varIntSize(stringSize) + stringSize + entrySize);
+        else
+            formatSize = SEBase.BASE_SIZE + Integer.BYTES + stringSize + entrySize;
+        sizeFormat = format;
+        return formatSize;
+    }
+    
+    /**
+     * Looks up the names of the slots in a dictionary
+     * @param dictionary The dictionary to look in, or null if there is none
+     * @return The dictionary ID of each slot's name (or -1 if it isn't in it), or null if there is no dictionary
+     */
+    private int[] getKeyIds(SEKeyDictionary dictionary) {
+        if(dictionary == null) return null;
+        if(dictionary != idDictionary) {
+            idDictionary = dictionary;
+            idCount = 0;
+        }
+        if(slotKeyIds.length < slotCount) slotKeyIds = Arrays.copyOf(slotKeyIds, slotNames.length);
+        
+        for(; idCount < slotCount; idCount++) {
+            slotKeyIds[idCount] = dictionary.getId(slotNames[idCount]);
+        }
+        return slotKeyIds;
+    }
+    
+    /**
+     * Gets the key field of an entry
+     * With a dictionary, the lowest bit tells if the rest is a dictionary ID (1) or a string table offset (0)
+     * @param slot The slot of the entry
+     * @param keyIds The dictionary IDs from getKeyIds, or null if there is no dictionary
+     * @param stringOffset The offset of the name in the string table, if it is in it
+     * @return The key field
+     */
+    private static int getKeyField(int slot, int[] keyIds, int stringOffset) {
+        if(keyIds == null) return stringOffset;
+        if(keyIds[slot] >= 0) return keyIds[slot] << 1 | 1;
+        return stringOffset << 1;
+    }
 
 	@Override
 	public byte[] getSerialized() {
-		serializationAccesses++;
-        if(serializationAccesses > 1) return new byte[0];
-		ByteArrayParser dest = new ByteArrayParser(getSize());
-		int headerSize = 0;
-		int stringSize = 0;
-			
-		for(String str : valueMap.keySet()) {
-			stringSize += SEBase.getStringSize(str);
-		}
+        SEFormat outer = hasParent ? SEFormat.DEFAULT : format;
+        byte[] cached = getCached(outer);
+        if(cached != null) return cached.clone();
         
-		if(getType() == SEType.ROOT_BLOCK.value()) {
-			
-			//Signature
-			for(int i = 0; i < SEBase.DBSIG.length; i++)
-				dest.addByte(SEBase.DBSIG[i]);
-			
-			//Compression check
-			dest.skip(4);
+        if(!isCompressed()) {
+            ByteArrayParser dest = new ByteArrayParser(getSize(outer));
+            writeTo(dest);
+            return keepCached(dest.toBytes(), outer);
+        }
+        
+        byte[] payload = compressFrame(null);
+		ByteArrayParser dest = new ByteArrayParser(getCompressedSize(payload));
+        dest.setFormat(format);
+		writeCompressed(dest, payload);
+		return keepCached(dest.toBytes(), outer);
+	}
+	
+    /**
+     * Gets the serialized version of the block, writing large children on an encoder's tasks
+     * @param encoder The encoder to use
+     * @return The serialized version of the block
+     */
+	byte[] getSerialized(SEParallelEncoder encoder) {
+        SEFormat outer = hasParent ? SEFormat.DEFAULT : format;
+        byte[] cached = getCached(outer);
+        if(cached != null) return cached.clone();
+        
+        if(!isCompressed()) {
+            ByteArrayParser dest = encoder.newParser(getSize(outer));
+            encoder.invoke(() -> writeTo(dest), dest);
+            return keepCached(dest.toBytes(), outer);
+        }
+        
+        ByteArrayParser raw = encoder.newParser(getRootFrameSize());
+        raw.setFormat(format);
+        encoder.invoke(() -> writeFrame(raw, SEBase.HEADER_SIZE), raw);
+        byte[] payload = codec.compress(raw.toBytes(), 0, raw.index);
+        
+		ByteArrayParser dest = new ByteArrayParser(getCompressedSize(payload));
+        dest.setFormat(format);
+		writeCompressed(dest, payload);
+		return keepCached(dest.toBytes(), outer);
+	}
+	
+	@Override
+	public ByteArrayParser serialize(ByteArrayPool pool) {
+        byte[] cached = getCached(hasParent ? SEFormat.DEFAULT : format);
+        if(cached != null) {
+            ByteArrayParser dest = new ByteArrayParser(pool, cached.length);
+            dest.addBytes(cached);
+            return dest;
+        }
+        
+        if(!isCompressed()) {
+            ByteArrayParser dest = new ByteArrayParser(pool, getSize(hasParent ? SEFormat.DEFAULT : format));
+            writeTo(dest);
+            return dest;
+        }
+        
+        byte[] payload = compressFrame(pool);
+		ByteArrayParser dest = new ByteArrayParser(pool, getCompressedSize(payload));
+        dest.setFormat(format);
+		writeCompressed(dest, payload);
+		return dest;
+	}
+	
+	@Override
+	public void writeTo(ByteArrayParser dest) {
+        if(hasParent) {
+            writeFrame(dest, 0);
+            return;
+        }
+        
+        //The root block decides the format of the whole document
+        SEFormat outer = dest.getFormat();
+        dest.setFormat(format);
+        
+        byte[] cached = getCached(format);
+        if(cached != null) {
+            dest.addBytes(cached);
+        } else if(isCompressed()) {
+            writeCompressed(dest, compressFrame(null));
+        } else {
+            writeHeader(dest, Codec.NONE);
+            writeFrame(dest, SEBase.HEADER_SIZE);
+            dest.addBytes(FILE_FOOTER);
+        }
+        
+        dest.setFormat(outer);
+	}
+    
+    /**
+     * Checks if the block will be compressed when serialized
+     */
+    private boolean isCompressed() {
+        return !hasParent && codec != null;
+    }
+    
+    /**
+     * Writes the root header
+     * @param dest The parser to write to
+     * @param codecId The ID of the codec the block is compressed with
+     */
+    private static void writeHeader(ByteArrayParser dest, int codecId) {
+        //Signature
+        dest.addBytes(SEBase.DBSIG);
+        
+        //Compression codec
+        dest.addInt(codecId);
+        
+        //Flags
+        dest.addShort(dest.getFormat().getFlags());
+        
+        //Header end
+        dest.addBytes(SEBase.HDEND);
+    }
+    
+    /**
+     * Writes the block itself, without the root header & footer
+     * @param dest The parser to write to
+     * @param headerSize The size of the root header before the block, or 0 if there is none
+     */
+    protected void writeFrame(ByteArrayParser dest, int headerSize) {
+        Thread current = Thread.currentThread();
+        if(serializingThread == current) return;
+        serializingThread = current;
+        
+		SEFormat destFormat = dest.getFormat();
+		boolean compact = destFormat.isCompact();
+		int[] keyIds = getKeyIds(destFormat.getDictionary());
+		int stringSize = 0;
 			
-            //Flags (None yet)
-            dest.addShort((short)0);
-            
-			//Header end
-			for(int i = 0; i < SEBase.HDEND.length; i++)
-				dest.addByte(SEBase.HDEND[i]);
+		for(int slot = 0; slot < slotCount; slot++) {
+			if(keyIds == null || keyIds[slot] < 0) stringSize += SEBase.getStringSize(slotKeys[slot]);
 		}
 		
 		//Type
 		dest.addShort(getType());
 		
-		//Size of data
-		dest.addInt(getSize() - headerSize - (Short.BYTES + Integer.BYTES));
-		
-        //Skip strings
-		dest.addInt(stringSize + dest.index);
+        if(compact) {
+            //Size of data & the string table
+            dest.addVarInt(getFrameSize(destFormat));
+            dest.addVarInt(stringSize);
+        } else {
+            //Size of data (Excludes the root header & footer)
+            dest.addInt(getFrameSize(destFormat));
+            
+            //Skip strings (Relative to the start of this block)
+            dest.addInt(headerSize + SEBase.BASE_SIZE + stringSize);
+        }
 		
-		for(String str : valueMap.keySet()) {
-			byte[] bytes = str.getBytes();
-			dest.addShort((short)bytes.length);
-			
-            for(short i = 0; i < bytes.length; i++) {
-			   dest.addByte(bytes[i]);
-			}
-			
-			dest.addByte((byte)0);
+        //Names that aren't in the dictionary
+		for(int slot = 0; slot < slotCount; slot++) {
+			if(keyIds == null || keyIds[slot] < 0) SEBase.writeString(dest, slotKeys[slot]);
 		}
         
+        if(destFormat.isIndexed()) writeIndex(dest, keyIds);
+        
 		//Begin data
-		for(Map.Entry<String, Serializable> entry : valueMap.entrySet()) {
-            byte[] bytes = entry.getValue().getSerialized();
+        int offset = 0;
+		for(int slot = 0; slot < slotCount; slot++) {
+            int keyField = getKeyField(slot, keyIds, offset);
+            if(compact) dest.addVarInt(keyField);
+            else dest.addInt(keyField);
+            if(keyIds == null || keyIds[slot] < 0) offset += SEBase.getStringSize(slotKeys[slot]);
             
-            dest.addInt(offsetMap.get(entry.getKey()));
-            for(int i = 0; i < bytes.length; i++)
-                dest.addByte(bytes[i]);
-        }
-        
-        for(int i = 0; i < FILE_FOOTER.length && !hasParent; i++) {
-            dest.addByte(FILE_FOOTER[i]);
+            if(slotTypes[slot] != OBJECT_SLOT)
+                PrimativeTypes.writeBits(dest, Primatives.values()[slotTypes[slot]], slotBits[slot]);
+            else
+                SEBase.writeValue(dest, slotValues[slot]);
         }
         
-        serializationAccesses--;
-		return dest.toBytes();
+        //Another thread may have started writing the block since, so only clear our own mark
+        if(serializingThread == current) serializingThread = null;
 	}
     
     /**
-     * Deserializes an SEBlock from an array
-     * @param barray The array to deserialize
+     * Writes the key index: the hashes of the names, sorted, each with the offset of its entry from the first entry
+     * @param dest The parser to write to
+     * @param keyIds The dictionary IDs of the names, from getKeyIds()
      */
-    private void deserialize(byte[] barray) {
-        ByteArrayParser src = new ByteArrayParser(barray);
-        boolean isHeader = false;
+    private void writeIndex(ByteArrayParser dest, int[] keyIds) {
+        SEFormat destFormat = dest.getFormat();
+        boolean compact = destFormat.isCompact();
+        long[] index = new long[slotCount];
+        int stringOffset = 0;
+        int entryOffset = 0;
         
+        for(int slot = 0; slot < slotCount; slot++) {
+            //Hash in the top half, so sorting sorts by hash
+            index[slot] = (long) SEBase.hashKey(slotKeys[slot]) << 32 | entryOffset;
+            
+            int keyField = getKeyField(slot, keyIds, stringOffset);
+            if(keyIds == null || keyIds[slot] < 0) stringOffset += SEBase.getStringSize(slotKeys[slot]);
+            entryOffset += (compact ? ByteArrayParser.varIntSize(keyField) : Integer.BYTES) + getSlotSize(slot, destFormat);
+        }
+        Arrays.sort(index);
+        
+        if(compact) dest.addVarInt(slotCount);
+        else dest.addInt(slotCount);
+        for(long entry : index) {
+            dest.addInt((int) (entry >> 32));
+            dest.addInt((int) entry);
+        }
+    }
+    
+    /**
+     * Serializes the block (without the root header & footer) and compresses it
+     * @param pool The pool to take the uncompressed buffer from, or null to allocate it
+     * @return The compressed block
+     */
+    private byte[] compressFrame(ByteArrayPool pool) {
+        ByteArrayParser raw = new ByteArrayParser(pool, getRootFrameSize());
+        raw.setFormat(format);
+        writeFrame(raw, SEBase.HEADER_SIZE);
+        byte[] payload = codec.compress(raw.toBytes(), 0, raw.index);
+        raw.release();
+        return payload;
+    }
+    
+    /**
+     * Gets the size of the root block itself in its format, without the root header & footer
+     */
+    private int getRootFrameSize() {
+        return getSize(format) - (hasParent ? 0 : SEBase.HEADER_SIZE + FILE_FOOTER.length);
+    }
+    
+    /**
+     * Gets the size of the compressed root block
+     * @param payload The compressed block
+     * @return The size, including the root header & footer
+     */
+    private static int getCompressedSize(byte[] payload) {
+        return SEBase.HEADER_SIZE + SEBase.BASE_SIZE + Integer.BYTES + payload.length + FILE_FOOTER.length;
+    }
+    
+    /**
+     * Writes a compressed root block
+     * The compressed frame is the type, the frame size, the uncompressed size and then the compressed block
+     * The sizes are always fixed width, whatever the format of the block is
+     * @param dest The parser to write to
+     * @param payload The compressed block
+     */
+    private void writeCompressed(ByteArrayParser dest, byte[] payload) {
+        writeHeader(dest, codec.getId());
+        dest.addShort(getType());
+        dest.addInt(SEBase.BASE_SIZE + Integer.BYTES + payload.length);
+        dest.addInt(getRootFrameSize());
+        dest.addBytes(payload);
+        dest.addBytes(FILE_FOOTER);
+    }
+    
+    /**
+     * Gets the codec ID in the root header of a serialized block
+     * @param src The array containing the block
+     * @param offset The offset of the block in the array
+     * @param length The length of the serialized block
+     * @return The codec ID, or Codec.NONE if the block has no root header or is uncompressed
+     */
+    static int readCodecId(byte[] src, int offset, int length) {
+        if(length < HEADER_SIZE + FILE_FOOTER.length) return Codec.NONE;
         for(int i = 0; i < DBSIG.length; i++) {
-            if(src.getByte() == DBSIG[i]) {
-                src.skip(1);
-                isHeader = true;
-            } else isHeader = false;
+            if(src[offset+i] != DBSIG[i]) return Codec.NONE;
         }
         
-        if(isHeader) {
-            if(src.getInt() != 0) return;
-            src.skip(4);
-            
-            //Flags
-            src.skip(Short.BYTES);
-            
-            for(int i = 0; i < HDEND.length; i++) {
-                if(src.getByte() == HDEND[i]) {
-                    src.skip(1);
-                } else {
-                    src.index = 0;
-                    break;
-                }
+        ByteArrayParser parser = new ByteArrayParser(src);
+        parser.index = offset + DBSIG.length;
+        return parser.getInt();
+    }
+    
+    /**
+     * Decompresses a compressed root block
+     * @param src The array containing the block
+     * @param offset The offset of the block in the array
+     * @param length The length of the serialized block
+     * @return The uncompressed block (with the root header & footer), or null if it isn't compressed or is malformed
+     */
+    static byte[] decompress(byte[] src, int offset, int length) {
+        int codecId = readCodecId(src, offset, length);
+        if(codecId == Codec.NONE) return null;
+        
+        Codec codec = Codec.forId(codecId);
+        if(codec == null) {
+            if(Serializable.DEBUG) System.err.println("ERR: Unknown codec " + codecId);
+            return null;
+        }
+        
+        ByteArrayParser parser = new ByteArrayParser(src);
+        parser.index = offset + HEADER_SIZE;
+        if(parser.getShort() != SEType.ROOT_BLOCK.value()) return null;
+        parser.skip(Short.BYTES);
+        int frameSize = parser.getInt();
+        parser.skip(Integer.BYTES);
+        int rawSize = parser.getInt();
+        parser.skip(Integer.BYTES);
+        
+        int payloadSize = frameSize - SEBase.BASE_SIZE - Integer.BYTES;
+        if(payloadSize < 0 || frameSize > length - HEADER_SIZE - FILE_FOOTER.length) return null;
+        if(rawSize < SEBase.BASE_SIZE || rawSize > Integer.MAX_VALUE - HEADER_SIZE - FILE_FOOTER.length - 8) return null;
+        
+        //Rebuild the uncompressed block, so it can be read like any other
+        byte[] raw = new byte[HEADER_SIZE + rawSize + FILE_FOOTER.length];
+        System.arraycopy(src, offset, raw, 0, HEADER_SIZE);
+        Arrays.fill(raw, DBSIG.length, DBSIG.length + Integer.BYTES, (byte) 0);
+        if(!codec.decompress(src, parser.index, payloadSize, raw, HEADER_SIZE, rawSize)) {
+            if(Serializable.DEBUG) System.err.println("ERR: Malformed compressed block");
+            return null;
+        }
+        System.arraycopy(FILE_FOOTER, 0, raw, HEADER_SIZE + rawSize, FILE_FOOTER.length);
+        
+        return raw;
+    }
+    
+    /**
+     * Checks the root header and footer of a serialized block, if it has them
+     * If valid, the index of the parser is moved to the start of the block's type, and the format is set from the flags
+     * @param src The parser containing the block, with the index pointing at the start of it
+     * @param length The length of the serialized block
+     * @return True if the block is valid, false if it is malformed or still compressed
+     */
+    static boolean readHeader(ByteArrayParser src, int length) {
+        byte[] barray = src.toBytes();
+        int base = src.index;
+        int end = base + length;
+        boolean isHeader = length >= HEADER_SIZE + FILE_FOOTER.length;
+        
+        for(int i = 0; i < DBSIG.length && isHeader; i++) {
+            isHeader = barray[base+i] == DBSIG[i];
+        }
+        
+        if(!isHeader) return true;
+        
+        src.skip(DBSIG.length);
+        if(src.getInt() != 0) return false;
+        src.skip(4);
+        
+        //Flags
+        SEFormat headerFormat = SEFormat.fromFlags(src.getShort(), src.getFormat().getDictionary());
+        src.skip(Short.BYTES);
+        
+        for(int i = 0; i < HDEND.length; i++) {
+            if(src.getByte() == HDEND[i]) {
+                src.skip(1);
+            } else {
+                src.index = base;
+                return true;
             }
-            
-            int oldIndex = src.index;
-            
-            src.index = barray.length - FILE_FOOTER.length;
-            for(int i = 0; i < FILE_FOOTER.length; i++) {
-                if(src.getByte() == FILE_FOOTER[i]) {
-                    if(!src.skip(1) && i < FILE_FOOTER.length-1) {
-                        if(Serializable.DEBUG) System.err.println("ERR: Truncated DB");
-                        return;
-                    }
-                } else {
-                    if(Serializable.DEBUG) System.err.println("ERR: Invalid DB");
-                    return;
-                }
+        }
+        
+        for(int i = 0; i < FILE_FOOTER.length; i++) {
+            if(barray[end - FILE_FOOTER.length + i] != FILE_FOOTER[i]) {
+                if(Serializable.DEBUG) System.err.println("ERR: Invalid DB");
+                return false;
             }
-            src.index = oldIndex;
-        } else hasParent = true;
+        }
+        
+        if(headerFormat == null) {
+            if(Serializable.DEBUG) System.err.println("ERR: Unknown header flags, or missing key dictionary");
+            return false;
+        }
+        src.setFormat(headerFormat);
+        
+        return true;
+    }
+    
+    /**
+     * Deserializes an SEBlock in place
+     * @param src The parser containing the block, with the index pointing at the start of it
+     * @param length The length of the serialized block
+     */
+    private void deserialize(ByteArrayParser src, int length) {
+        if(readCodecId(src.toBytes(), src.index, length) != Codec.NONE) {
+            byte[] raw = decompress(src.toBytes(), src.index, length);
+            if(raw == null) return;
+            codec = Codec.forId(readCodecId(src.toBytes(), src.index, length));
+            ByteArrayParser rawParser = new ByteArrayParser(raw);
+            rawParser.setFormat(src.getFormat());
+            deserialize(rawParser, raw.length);
+            return;
+        }
+        
+        byte[] barray = src.toBytes();
+        int base = src.index;
+        int end = base + length;
+        
+        if(!readHeader(src, length)) return;
+        hasParent = src.index == base;
         
         if(src.getShort() != getType()) {
-            System.out.println(src.getShort());
+            if(Serializable.DEBUG) System.err.println("ERR: Invalid block type " + src.getShort());
             return;
         }
         
+        if(!hasParent) format = src.getFormat();
+        boolean compact = src.getFormat().isCompact();
+        
         //Baseline Size
         src.skip(Short.BYTES);
-        
-        int size = src.getInt();
-        src.skip(Integer.BYTES);
+        SEBase.readField(src);
         
         //String skip
-        int stringsStart = src.index + 4;
-        src.index = src.getInt();
-        src.skip(4);
-        int stringsLength = src.index;
+        int stringsStart, stringsEnd;
+        int dataEnd = end - (hasParent ? 0 : FILE_FOOTER.length);
+        if(compact) {
+            int stringSize = src.readVarInt();
+            stringsStart = src.index;
+            stringsEnd = stringsStart + stringSize;
+        } else {
+            stringsStart = src.index + 4;
+            stringsEnd = base + src.getInt() + 4;
+        }
+        if(stringsEnd < stringsStart || stringsEnd > dataEnd) {
+            if(Serializable.DEBUG) System.err.println("ERR: Invalid string table bounds");
+            return;
+        }
+        src.index = stringsEnd;
+        SEBase.skipIndex(src, dataEnd);
         
         //Deserialize Data
-        while(src.index < barray.length - (hasParent ? 0 : FILE_FOOTER.length)) {
-            String key = SEBase.parseString(Arrays.copyOfRange(src.toBytes(), src.getInt()+stringsStart, stringsLength));
-            src.skip(4);
+        int minEntrySize = (compact ? 1 : Integer.BYTES) + Short.BYTES;
+        while(src.index + minEntrySize <= dataEnd) {
+            String key = SEBase.readKey(src, stringsStart, stringsEnd);
             
-            if(key.isEmpty()) {
-                src.skip(src.getInt());
-            }
+            //Malformed? Just die anyways
+            if(src.getShort() == SEType.ROOT_BLOCK.value()) return;
             
-            //Do thing
-            short type = src.getShort();
-            src.skip(2);
-            int serialSize = src.getInt();
-            src.skip(-2);
+            int start = src.index;
+            int serialSize = SEBase.getSerialSize(src);
+            if(serialSize <= 0 || serialSize > dataEnd - start) return;
             
-            if(type == SEType.ROOT_BLOCK.value()) {
-                //Malformed? Just die anyways
-                return;
-            } else if(type == SEType.BLOCK.value()) {
-                setValue(key, new SEBlock(Arrays.copyOfRange(src.toBytes(), src.index, src.index+serialSize)));
-                src.skip(serialSize);
-            } else if(type == SEType.LIST.value()) {
-                setValue(key, new SEList(Arrays.copyOfRange(src.toBytes(), src.index, src.index+serialSize)));
-                src.skip(serialSize);
+            short type = src.getShort();
+            if(key.isEmpty()) {
+                //Nameless, so skip
             } else if((type & 0xFF) == SEType.PRIMATIVE.value()) {
-                switch(Primatives.values()[type >> 8]) {
-                    case BOOLEAN: setValue(key, new PrimativeTypes.BooleanValue(Arrays.copyOfRange(src.toBytes(), src.index, src.index+2+Byte.BYTES))); src.skip(Byte.BYTES+2); break;
-                    case BYTE: setValue(key, new PrimativeTypes.ByteValue(Arrays.copyOfRange(src.toBytes(), src.index, src.index+2+Byte.BYTES))); src.skip(Byte.BYTES+2); break;
-                    case SHORT: setValue(key, new PrimativeTypes.ShortValue(Arrays.copyOfRange(src.toBytes(), src.index, src.index+2+Short.BYTES))); src.skip(Short.BYTES+2); break;
-                    case CHAR: setValue(key, new PrimativeTypes.CharValue(Arrays.copyOfRange(src.toBytes(), src.index, src.index+2+Character.BYTES))); src.skip(Character.BYTES+2); break;
-                    case INT: setValue(key, new PrimativeTypes.IntValue(Arrays.copyOfRange(src.toBytes(), src.index, src.index+2+Integer.BYTES))); src.skip(Integer.BYTES+2); break;
-                    case FLOAT: setValue(key, new PrimativeTypes.FloatValue(Arrays.copyOfRange(src.toBytes(), src.index, src.index+2+Float.BYTES))); src.skip(Float.BYTES+2); break;
-                    case LONG: setValue(key, new PrimativeTypes.LongValue(Arrays.copyOfRange(src.toBytes(), src.index, src.index+2+Long.BYTES))); src.skip(Long.BYTES+2); break;
-                    case DOUBLE: setValue(key, new PrimativeTypes.DoubleValue(Arrays.copyOfRange(src.toBytes(), src.index, src.index+2+Double.BYTES))); src.skip(Double.BYTES+2); break;
-                }
-            } else if(type == SEType.STRING.value()) {
-                setValue(key, new SEString(Arrays.copyOfRange(src.toBytes(), src.index, src.index+serialSize)));
-                src.skip(serialSize);
+                putBits(key, Primatives.values()[type >> 8], PrimativeTypes.readBits(src, start + Short.BYTES, Primatives.values()[type >> 8]));
             } else {
-                //Just skip
-                src.skip(serialSize);
+                Serializable value = SEBase.deserializeValue(src, serialSize);
+                if(value != null) setValue(key, value);
             }
+            src.index = start + serialSize;
         }
     }
 
@@ -0,0 +1,498 @@
+/*
+ * Copyright (C) 2017 DropDemBits <r3usrlnd@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package gio.ddb.serial2;
+
+import gio.ddb.serial2.compression.Codec;
+import gio.ddb.serial2.types.PrimativeTypes;
+import gio.ddb.serial2.types.PrimativeTypes.Primatives;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Read-only view of a serialized block, read in place from a ByteBuffer
+ * Nothing is copied up front: the root header & footer are checked in place, and only the entries that
+ * are looked up (plus the entry headers, the first time a lookup is done) are read.
+ * Works on heap buffers as well as mapped files (see SEMappedFile).
+ * Fixed width primitives can be overwritten in place through the setters, when the buffer is writable.
+ * @author DropDemBits <r3usrlnd@gmail.com>
+ */
+public class SEBlockView {
+    
+    /* Little endian view of the data */
+    private final ByteBuffer buffer;
+    /* The wire format of the block */
+    private final SEFormat format;
+    /**
+     * Index of the entries, or null if the block is invalid
+     */
+    private SEEntryIndex entries;
+    
+    /**
+     * Creates a new view of a serialized root block
+     * The block runs from the position to the limit of the buffer
+     * @param src The buffer containing the block
+     */
+    public SEBlockView(ByteBuffer src) {
+        this(src, null);
+    }
+    
+    /**
+     * Creates a new view of a serialized root block that may use a shared key dictionary
+     * The block runs from the position to the limit of the buffer.
+     * Compressed blocks can't be read in place, so they are decompressed onto the heap, and can't be patched.
+     * @param src The buffer containing the block
+     * @param dictionary The dictionary the block was serialized with, or null if there is none
+     */
+    public SEBlockView(ByteBuffer src, SEKeyDictionary dictionary) {
+        ByteBuffer view = src.slice().order(ByteOrder.LITTLE_ENDIAN);
+        int length = view.remaining();
+        
+        if(readCodecId(view, length) != Codec.NONE) {
+            byte[] compressed = new byte[length];
+            view.get(compressed);
+            byte[] raw = SEBlock.decompress(compressed, 0, length);
+            view = ByteBuffer.wrap(raw == null ? new byte[0] : raw).asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+            length = view.remaining();
+        }
+        
+        this.buffer = view;
+        this.format = readHeader(view, length, dictionary);
+        if(format == null || buffer.getShort(SEBase.HEADER_SIZE) != SEType.ROOT_BLOCK.value()) {
+            if(Serializable.DEBUG) System.err.println("ERR: Invalid DB");
+            return;
+        }
+        
+        entries = new SEEntryIndex(buffer, format, 0, SEBase.HEADER_SIZE, length - SEBlock.FILE_FOOTER.length);
+    }
+    
+    /**
+     * Creates a new view of a nested block
+     */
+    private SEBlockView(ByteBuffer buffer, SEFormat format, int offset, int length) {
+        this.buffer = buffer;
+        this.format = format;
+        if(buffer.getShort(offset) != SEType.BLOCK.value()) return;
+        
+        entries = new SEEntryIndex(buffer, format, offset, offset, offset + length);
+    }
+    
+    /**
+     * Gets the codec ID in the root header
+     */
+    private static int readCodecId(ByteBuffer view, int length) {
+        if(length < SEBase.HEADER_SIZE + SEBlock.FILE_FOOTER.length) return Codec.NONE;
+        for(int i = 0; i < SEBase.DBSIG.length; i++) {
+            if(view.get(i) != SEBase.DBSIG[i]) return Codec.NONE;
+        }
+        return view.getInt(SEBase.DBSIG.length);
+    }
+    
+    /**
+     * Checks the root header & footer in place
+     * @return The format from the header flags, or null if the header or footer is invalid
+     */
+    private static SEFormat readHeader(ByteBuffer view, int length, SEKeyDictionary dictionary) {
+        if(length < SEBase.HEADER_SIZE + SEBlock.FILE_FOOTER.length + SEBase.BASE_SIZE) return null;
+        
+        for(int i = 0; i < SEBase.DBSIG.length; i++) {
+            if(view.get(i) != SEBase.DBSIG[i]) return null;
+        }
+        if(view.getInt(SEBase.DBSIG.length) != Codec.NONE) return null;
+        
+        int headerEnd = SEBase.HEADER_SIZE - SEBase.HDEND.length;
+        for(int i = 0; i < SEBase.HDEND.length; i++) {
+            if(view.get(headerEnd + i) != SEBase.HDEND[i]) return null;
+        }
+        
+        int footer = length - SEBlock.FILE_FOOTER.length;
+        for(int i = 0; i < SEBlock.FILE_FOOTER.length; i++) {
+            if(view.get(footer + i) != SEBlock.FILE_FOOTER[i]) return null;
+        }
+        
+        return SEFormat.fromFlags(view.getShort(SEBase.DBSIG.length + Integer.BYTES), dictionary);
+    }
+    
+    /**
+     * Checks if the block is valid
+     * @return True if the header, footer and frame of the block are valid
+     */
+    public boolean isValid() {
+        return entries != null && entries.isValid();
+    }
+    
+    /**
+     * Gets the wire format of the block
+     * @return The format, or null if the root header is invalid
+     */
+    public SEFormat getFormat() {
+        return format;
+    }
+    
+    /**
+     * Finds the entry mapped to a name
+     * @param name The name to look for
+     * @return The index of the entry, or -1 if none was found
+     */
+    private int indexOf(String name) {
+        return entries == null ? -1 : entries.indexOf(name);
+    }
+    
+    /**
+     * Gets the offset of the value mapped to a name
+     * @param name The name to look for
+     * @return The offset of the value (at its type) in the buffer, or -1 if none was found
+     */
+    int getValueOffset(String name) {
+        int entry = indexOf(name);
+        return entry < 0 ? -1 : entries.getValueOffset(entry);
+    }
+    
+    /**
+     * Gets the buffer the view reads from
+     * @return The little endian buffer, with offsets relative to the start of the block
+     */
+    ByteBuffer getBuffer() {
+        return buffer;
+    }
+    
+    /**
+     * Checks if a name is mapped to a value
+     * @param name The name to look for
+     * @return True if the block contains the name
+     */
+    public boolean contains(String name) {
+        return indexOf(name) >= 0;
+    }
+    
+    /**
+     * Gets the amount of entries in the block
+     * @return The amount of entries
+     */
+    public int size() {
+        return entries == null ? 0 : entries.size();
+    }
+    
+    /**
+     * Reads the raw bits of a primitive value in place
+     * @param name The name to get the value from
+     * @param type The type the value must be
+     * @return The raw bits of the value, or zero if none was found or the types don't match
+     */
+    private long getBits(String name, Primatives type) {
+        int offset = getValueOffset(name);
+        if(offset < 0 || buffer.getShort(offset) != PrimativeTypes.getType(type)) return 0;
+        offset += Short.BYTES;
+        
+        if(PrimativeTypes.isVarint(type, format)) {
+            entries.cursor = offset;
+            long value = ByteArrayParser.unZigZag(entries.readVarLong());
+            return type == Primatives.INT ? value & 0xFFFFFFFFL : value;
+        }
+        
+        switch(type.size) {
+            case Byte.BYTES: return buffer.get(offset) & 0xFFL;
+            case Short.BYTES: return buffer.getShort(offset) & 0xFFFFL;
+            case Integer.BYTES: return buffer.getInt(offset) & 0xFFFFFFFFL;
+            default: return buffer.getLong(offset);
+        }
+    }
+    
+    /**
+     * Overwrites the raw bits of a primitive value in place
+     * @param name The name of the value
+     * @param type The type the value must be
+     * @param bits The new raw bits of the value
+     * @return True if the value was overwritten
+     */
+    private boolean putBits(String name, Primatives type, long bits) {
+        if(buffer.isReadOnly()) return false;
+        int offset = getValueOffset(name);
+        if(offset < 0 || buffer.getShort(offset) != PrimativeTypes.getType(type)) return false;
+        offset += Short.BYTES;
+        
+        if(PrimativeTypes.isVarint(type, format)) {
+            //Only fits if the new varint is as long as the old one
+            long value = ByteArrayParser.zigZag(type == Primatives.INT ? (int) bits : bits);
+            entries.cursor = offset;
+            entries.readVarLong();
+            int end = entries.cursor;
+            if(ByteArrayParser.varLongSize(value) != end - offset) return false;
+            
+            for(; offset < end - 1; offset++, value >>>= 7)
+                buffer.put(offset, (byte) (value & 0x7F | 0x80));
+            buffer.put(offset, (byte) value);
+            return true;
+        }
+        
+        switch(type.size) {
+            case Byte.BYTES: buffer.put(offset, (byte) bits); break;
+            case Short.BYTES: buffer.putShort(offset, (short) bits); break;
+            case Integer.BYTES: buffer.putInt(offset, (int) bits); break;
+            default: buffer.putLong(offset, bits); break;
+        }
+        return true;
+    }
+    
+    /**
+     * Overwrites a boolean in place
+     * @param name The name of the value
+     * @param value The new value
+     * @return True if the value was overwritten, false if there is no boolean with the name or the buffer is read only
+     */
+    public boolean setBoolean(String name, boolean value) {
+        return putBits(name, Primatives.BOOLEAN, value ? 1 : 0);
+    }
+    
+    /**
+     * Overwrites a byte in place
+     * @param name The name of the value
+     * @param value The new value
+     * @return True if the value was overwritten, false if there is no byte with the name or the buffer is read only
+     */
+    public boolean setByte(String name, byte value) {
+        return putBits(name, Primatives.BYTE, value);
+    }
+    
+    /**
+     * Overwrites a char in place
+     * @param name The name of the value
+     * @param value The new value
+     * @return True if the value was overwritten, false if there is no char with the name or the buffer is read only
+     */
+    public boolean setChar(String name, char value) {
+        return putBits(name, Primatives.CHAR, value);
+    }
+    
+    /**
+     * Overwrites a short in place
+     * @param name The name of the value
+     * @param value The new value
+     * @return True if the value was overwritten, false if there is no short with the name or the buffer is read only
+     */
+    public boolean setShort(String name, short value) {
+        return putBits(name, Primatives.SHORT, value);
+    }
+    
+    /**
+     * Overwrites an integer in place
+     * In the compact format, the new value must take as many bytes as the old one
+     * @param name The name of the value
+     * @param value The new value
+     * @return True if the value was overwritten, false if there is no integer with the name, it doesn't fit,
+     *         or the buffer is read only
+     */
+    public boolean setInt(String name, int value) {
+        return putBits(name, Primatives.INT, value);
+    }
+    
+    /**
+     * Overwrites a long in place
+     * In the compact format, the new value must take as many bytes as the old one
+     * @param name The name of the value
+     * @param value The new value
+     * @return True if the value was overwritten, false if there is no long with the name, it doesn't fit,
+     *         or the buffer is read only
+     */
+    public boolean setLong(String name, long value) {
+        return putBits(name, Primatives.LONG, value);
+    }
+    
+    /**
+     * Overwrites a float in place
+     * @param name The name of the value
+     * @param value The new value
+     * @return True if the value was overwritten, false if there is no float with the name or the buffer is read only
+     */
+    public boolean setFloat(String name, float value) {
+        return putBits(name, Primatives.FLOAT, Float.floatToRawIntBits(value));
+    }
+    
+    /**
+     * Overwrites a double in place
+     * @param name The name of the value
+     * @param value The new value
+     * @return True if the value was overwritten, false if there is no double with the name or the buffer is read only
+     */
+    public boolean setDouble(String name, double value) {
+        return putBits(name, Primatives.DOUBLE, Double.doubleToRawLongBits(value));
+    }
+    
+    /**
+     * Gets a boolean from a string
+     * @param name The name to get the value from
+     * @return A boolean value, or false if none was found
+     */
+    public boolean getBoolean(String name) {
+        return getBits(name, Primatives.BOOLEAN) != 0;
+    }
+    
+    /**
+     * Gets a byte from a string
+     * @param name The name to get the value from
+     * @return A byte value, or zero if none was found
+     */
+    public byte getByte(String name) {
+        return (byte) getBits(name, Primatives.BYTE);
+    }
+    
+    /**
+     * Gets a char from a string
+     * @param name The name to get the value from
+     * @return A char value, or zero if none was found
+     */
+    public char getChar(String name) {
+        return (char) getBits(name, Primatives.CHAR);
+    }
+    
+    /**
+     * Gets a short from a string
+     * @param name The name to get the value from
+     * @return A short value, or zero if none was found
+     */
+    public short getShort(String name) {
+        return (short) getBits(name, Primatives.SHORT);
+    }
+    
+    /**
+     * Gets an integer from a string
+     * @param name The name to get the value from
+     * @return An integer value, or zero if none was found
+     */
+    public int getInt(String name) {
+        return (int) getBits(name, Primatives.INT);
+    }
+    
+    /**
+     * Gets a long from a string
+     * @param name The name to get the value from
+     * @return A long value, or zero if none was found
+     */
+    public long getLong(String name) {
+        return getBits(name, Primatives.LONG);
+    }
+    
+    /**
+     * Gets a float from a string
+     * @param name The name to get the value from
+     * @return A float value, or zero if none was found
+     */
+    public float getFloat(String name) {
+        return Float.intBitsToFloat((int) getBits(name, Primatives.FLOAT));
+    }
+    
+    /**
+     * Gets a double from a string
+     * @param name The name to get the value from
+     * @return A double value, or zero if none was found
+     */
+    public double getDouble(String name) {
+        return Double.longBitsToDouble(getBits(name, Primatives.DOUBLE));
+    }
+    
+    /**
+     * Gets a string from a string
+     * @param name The name to get the value from
+     * @return A string value, or an empty string if none was found
+     */
+    public String getString(String name) {
+        Serializable value = getValue(name, SEType.STRING.value());
+        return value instanceof SEString ? ((SEString) value).getValue() : "";
+    }
+    
+    /**
+     * Gets a view of a nested block, without copying it
+     * @param name The name to get the block from
+     * @return A view of the block, or null if none was found
+     */
+    public SEBlockView getBlock(String name) {
+        int entry = indexOf(name);
+        if(entry < 0 || buffer.getShort(entries.getValueOffset(entry)) != SEType.BLOCK.value()) return null;
+        return new SEBlockView(buffer, format, entries.getValueOffset(entry), entries.getValueSize(entry));
+    }
+    
+    /**
+     * Gets a copy of an SEList from a string
+     * @param name The name to get the value from
+     * @return An SEList value, or null if none was found
+     */
+    public SEList getList(String name) {
+        Serializable value = getValue(name, SEType.LIST.value());
+        return value instanceof SEList ? (SEList) value : null;
+    }
+    
+    /**
+     * Gets a copy of an SEIntList from a string
+     * @param name The name to get the value from
+     * @return An SEIntList value, or null if none was found
+     */
+    public SEIntList getIntList(String name) {
+        Serializable value = getValue(name, SETypedList.getType(Primatives.INT));
+        return value instanceof SEIntList ? (SEIntList) value : null;
+    }
+    
+    /**
+     * Gets a copy of an SELongList from a string
+     * @param name The name to get the value from
+     * @return An SELongList value, or null if none was found
+     */
+    public SELongList getLongList(String name) {
+        Serializable value = getValue(name, SETypedList.getType(Primatives.LONG));
+        return value instanceof SELongList ? (SELongList) value : null;
+    }
+    
+    /**
+     * Gets a copy of an SEDoubleList from a string
+     * @param name The name to get the value from
+     * @return An SEDoubleList value, or null if none was found
+     */
+    public SEDoubleList getDoubleList(String name) {
+        Serializable value = getValue(name, SETypedList.getType(Primatives.DOUBLE));
+        return value instanceof SEDoubleList ? (SEDoubleList) value : null;
+    }
+    
+    /**
+     * Gets a copy of an SEByteList from a string
+     * @param name The name to get the value from
+     * @return An SEByteList value, or null if none was found
+     */
+    public SEByteList getByteList(String name) {
+        Serializable value = getValue(name, SETypedList.getType(Primatives.BYTE));
+        return value instanceof SEByteList ? (SEByteList) value : null;
+    }
+    
+    /**
+     * Deserializes a copy of a value
+     * Only the bytes of the value are copied out of the buffer
+     * @param name The name to get the value from
+     * @param type The type the value must be
+     * @return The value, or null if none was found or the types don't match
+     */
+    private Serializable getValue(String name, short type) {
+        int entry = indexOf(name);
+        if(entry < 0 || buffer.getShort(entries.getValueOffset(entry)) != type) return null;
+        
+        byte[] value = new byte[entries.getValueSize(entry)];
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(entries.getValueOffset(entry));
+        slice.get(value);
+        
+        ByteArrayParser parser = new ByteArrayParser(value);
+        parser.setFormat(format);
+        return SEBase.deserializeValue(parser, value.length);
+    }
+    
+}
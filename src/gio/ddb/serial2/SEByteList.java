@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2017 DropDemBits <r3usrlnd@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package gio.ddb.serial2;
+
+import gio.ddb.serial2.types.PrimativeTypes.Primatives;
+
+/**
+ * List of bytes, backed by a byte array
+ * @author DropDemBits <r3usrlnd@gmail.com>
+ */
+public class SEByteList extends SETypedList<byte[]> {
+
+    /**
+     * Creates a new, empty SEByteList
+     */
+    public SEByteList() {
+        super(Primatives.BYTE);
+    }
+    
+    /**
+     * Creates a new SEByteList holding a copy of an array
+     * @param src The values to copy
+     */
+    public SEByteList(byte[] src) {
+        this();
+        addAll(src);
+    }
+    
+    /**
+     * Creates a new SEByteList from a byte array, reading it in place
+     * @param src The array to parse
+     * @param offset The offset of the serialized list in the array
+     * @param length The length of the serialized list
+     */
+    public SEByteList(byte[] src, int offset, int length) {
+        this(SETypedList.parserAt(src, offset), length);
+    }
+    
+    /**
+     * Creates a new SEByteList from a parser, reading it in place
+     * The index of the parser is left in an undefined place
+     * @param src The parser containing the list, with the index pointing at the start of it
+     * @param length The length of the serialized list
+     */
+    SEByteList(ByteArrayParser src, int length) {
+        super(Primatives.BYTE, src, length);
+    }
+    
+    /**
+     * Gets the byte at the specified index
+     * @param index The index to get the byte from
+     * @return The byte, or zero if the index is out of bounds
+     */
+    public byte get(int index) {
+        if(index < 0 || index >= length) return 0;
+        return values[index];
+    }
+    
+    /**
+     * Copies a range of bytes into an array
+     * @param index The index of the first byte to copy
+     * @param dest The array to copy into
+     * @param offset The offset into dest to start copying to
+     * @param count The amount of bytes to copy
+     */
+    public void get(int index, byte[] dest, int offset, int count) {
+        getRange(index, dest, offset, count);
+    }
+    
+    /**
+     * Sets the byte at the specified index
+     * Will append if the index is the length of the list, and will not do anything if the index is past it
+     * @param index The index to set the byte at
+     * @param value The byte to set
+     */
+    public void set(int index, byte value) {
+        if(!reserve(index, 1)) return;
+        values[index] = value;
+        written(index + 1);
+    }
+    
+    /**
+     * Sets a range of bytes, extending the list if the range goes past the end
+     * Will not do anything if the index is past the end of the list
+     * @param index The index to start setting bytes at
+     * @param src The array to copy from
+     * @param offset The offset into src to start copying from
+     * @param count The amount of bytes to copy
+     */
+    public void set(int index, byte[] src, int offset, int count) {
+        setRange(index, src, offset, count);
+    }
+    
+    /**
+     * Appends a byte
+     * @param value The byte to append
+     */
+    public void add(byte value) {
+        set(length, value);
+    }
+    
+    /**
+     * Appends all of the bytes in an array
+     * @param src The bytes to append
+     */
+    public void addAll(byte[] src) {
+        addAll(src, 0, src.length);
+    }
+    
+    /**
+     * Appends a range of bytes from an array
+     * @param src The array to copy from
+     * @param offset The offset into src to start copying from
+     * @param count The amount of bytes to copy
+     */
+    public void addAll(byte[] src, int offset, int count) {
+        set(length, src, offset, count);
+    }
+    
+    /**
+     * Copies the bytes into a new array
+     * @return A new array containing all of the bytes
+     */
+    public byte[] toArray() {
+        return copyValues();
+    }
+    
+    @Override
+    protected byte[] newArray(int capacity) {
+        return new byte[capacity];
+    }
+    
+    @Override
+    protected void readValues(ByteArrayParser src, int count) {
+        System.arraycopy(src.toBytes(), src.index, values, 0, count);
+    }
+    
+    @Override
+    protected void writeValues(ByteArrayParser dest) {
+        dest.addBytes(values, 0, length);
+    }
+    
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2017 DropDemBits <r3usrlnd@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package gio.ddb.serial2;
+
+import gio.ddb.serial2.compression.Codec;
+import gio.ddb.serial2.types.PrimativeTypes.Primatives;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Block that can be read, modified and serialized from several threads at once
+ * Changes and size bookkeeping happen under a write lock, and reads under a read lock.
+ * Serializing only holds the lock long enough to copy the slots, so writers can keep going while the copy is written.
+ * Values nested in the block are shared with those copies, so they must not be modified after they are added;
+ * replace them with setValue() instead. Nested concurrent blocks are the exception, and are copied along with the block.
+ * @author DropDemBits <r3usrlnd@gmail.com>
+ */
+public class SEConcurrentBlock extends SEBlock {
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    /**
+     * Incremented by every change. A copy's serialized version is only cached if nothing changed since it was made
+     */
+    private long version;
+    /* Size change to pass on to the parent once the outermost write lock is released */
+    private int pendingDelta;
+    private boolean pendingChange;
+
+    /**
+     * Creates a new, empty SEConcurrentBlock
+     */
+    public SEConcurrentBlock() {
+        super();
+    }
+
+    /**
+     * Creates a new SEConcurrentBlock holding the values of a block
+     * The values are moved into the new block, so the other block must not be used afterwards
+     * @param block The block to take the values from
+     */
+    public SEConcurrentBlock(SEBlock block) {
+        super(materialized(block), true);
+    }
+
+    /**
+     * Makes sure a lazy block has deserialized its slots
+     */
+    private static SEBlock materialized(SEBlock block) {
+        block.getNames();
+        return block;
+    }
+
+    /**
+     * Copies the slots while holding the read lock
+     * @return A block that can be written without holding the lock
+     */
+    private SEBlock snapshot() {
+        lock.readLock().lock();
+        try {
+            return new SEBlock(this, false);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    Serializable freeze() {
+        return snapshot();
+    }
+
+    /**
+     * Releases the write lock, passing on size changes to the parent if it was the outermost hold
+     * Passing them on outside of the lock means a parent's lock is never taken while a child's is held
+     */
+    private void unlockWrite() {
+        SEBase container = null;
+        int delta = 0;
+        if(lock.getWriteHoldCount() == 1 && pendingChange) {
+            container = parent;
+            delta = pendingDelta;
+            pendingDelta = 0;
+            pendingChange = false;
+        }
+        lock.writeLock().unlock();
+
+        if(container != null) container.sizeChanged(delta);
+    }
+
+    @Override
+    protected void sizeChanged(int delta) {
+        lock.writeLock().lock();
+        try {
+            adjustSize(delta);
+            dropCached();
+            version++;
+            pendingDelta += delta;
+            pendingChange = true;
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    @Override
+    protected void recalculateSize() {
+        lock.writeLock().lock();
+        try {
+            //The change is passed on when the lock is released
+            SEBase container = parent;
+            int oldSize = super.getSize();
+            parent = null;
+            super.recalculateSize();
+            parent = container;
+
+            version++;
+            pendingDelta += super.getSize() - oldSize;
+            pendingChange = true;
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    @Override
+    protected void putBits(String name, Primatives type, long bits) {
+        lock.writeLock().lock();
+        try {
+            super.putBits(name, type, bits);
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    @Override
+    protected void putValue(String name, Serializable value) {
+        lock.writeLock().lock();
+        try {
+            super.putValue(name, value);
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    @Override
+    protected void removeValue(String name) {
+        lock.writeLock().lock();
+        try {
+            super.removeValue(name);
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    @Override
+    protected long getBits(String name, Primatives type) {
+        lock.readLock().lock();
+        try {
+            return super.getBits(name, type);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    protected Serializable getValue(String name) {
+        lock.readLock().lock();
+        try {
+            return super.getValue(name);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<String> getNames() {
+        lock.readLock().lock();
+        try {
+            return super.getNames();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void setCodec(Codec codec) {
+        lock.writeLock().lock();
+        try {
+            super.setCodec(codec);
+            version++;
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    @Override
+    public void setFormat(SEFormat format) {
+        lock.writeLock().lock();
+        try {
+            super.setFormat(format);
+            version++;
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    @Override
+    public int getSize() {
+        lock.readLock().lock();
+        try {
+            return super.getSize();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int getSize(SEFormat format) {
+        if(format.isDefault()) return getSize();
+
+        //Sizes in other formats are cached, so working them out is a change
+        lock.writeLock().lock();
+        try {
+            return super.getSize(format);
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    @Override
+    public byte[] getSerialized() {
+        SEBlock snapshot;
+        long seen;
+        lock.readLock().lock();
+        try {
+            byte[] cached = getCached(getCacheFormat());
+            if(cached != null) return cached.clone();
+
+            snapshot = new SEBlock(this, false);
+            seen = version;
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return keepSnapshot(snapshot.getSerialized(), seen);
+    }
+
+    @Override
+    byte[] getSerialized(SEParallelEncoder encoder) {
+        long seen;
+        SEBlock snapshot;
+        lock.readLock().lock();
+        try {
+            byte[] cached = getCached(getCacheFormat());
+            if(cached != null) return cached.clone();
+
+            snapshot = new SEBlock(this, false);
+            seen = version;
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return keepSnapshot(snapshot.getSerialized(encoder), seen);
+    }
+
+    /**
+     * Caches the serialized version of a copy, if nothing changed since the copy was made
+     * @param serialized The serialized copy
+     * @param seen The version the copy was made at
+     * @return The serialized version to hand out
+     */
+    private byte[] keepSnapshot(byte[] serialized, long seen) {
+        lock.writeLock().lock();
+        try {
+            if(version != seen) return serialized;
+            return keepCached(serialized, getCacheFormat());
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    /**
+     * Gets the format the serialized version is cached under
+     */
+    private SEFormat getCacheFormat() {
+        return hasParent ? SEFormat.DEFAULT : getFormat();
+    }
+
+    @Override
+    public ByteArrayParser serialize(ByteArrayPool pool) {
+        return snapshot().serialize(pool);
+    }
+
+    @Override
+    public void writeTo(ByteArrayParser dest) {
+        snapshot().writeTo(dest);
+    }
+
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2017 DropDemBits <r3usrlnd@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package gio.ddb.serial2;
+
+import gio.ddb.serial2.compression.Codec;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Resumable decoder for serialized root blocks that arrive in fragments
+ * The length of a document is known as soon as the root header and the root frame size have arrived,
+ * so the rest of the document is read straight into its own array and decoded in place once it is complete.
+ * Works with non-blocking channels: reads return null until a whole document has arrived.
+ * @author DropDemBits <r3usrlnd@gmail.com>
+ */
+public class SEDecoder {
+    
+    /**
+     * The largest document accepted by default (64 MiB)
+     */
+    public static final int DEFAULT_MAX_SIZE = 1 << 26;
+    
+    /* Enough for the root header, the type and the largest size field */
+    private static final int PREFIX_SIZE = SEBase.HEADER_SIZE + Short.BYTES + 5;
+    /* Start of the root frame size field */
+    private static final int SIZE_START = SEBase.HEADER_SIZE + Short.BYTES;
+    
+    /* The dictionary the documents were serialized with */
+    private final SEKeyDictionary dictionary;
+    /**
+     * The start of the document, until its length is known
+     */
+    private final byte[] prefix = new byte[PREFIX_SIZE];
+    private int prefixLength;
+    /* Whether the root frame size is fixed width */
+    private boolean fixedSize;
+    /**
+     * The document being received, once its length is known
+     */
+    private byte[] document;
+    private int filled;
+    /* Limits */
+    private int maxSize = DEFAULT_MAX_SIZE;
+    private boolean lazy;
+    private boolean endOfStream;
+    
+    /**
+     * Creates a new decoder
+     */
+    public SEDecoder() {
+        this(null);
+    }
+    
+    /**
+     * Creates a new decoder for documents that may use a shared key dictionary
+     * @param dictionary The dictionary the documents were serialized with, or null if there is none
+     */
+    public SEDecoder(SEKeyDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+    
+    /**
+     * Sets the largest document the decoder accepts, to guard against bogus sizes
+     * Defaults to DEFAULT_MAX_SIZE
+     * @param maxSize The largest document size, including the root header & footer
+     */
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+    
+    /**
+     * Sets whether completed documents are returned as SELazyBlocks
+     * The received array is handed over to the block either way, so lazy blocks don't copy it
+     * @param lazy True to return lazy blocks
+     */
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+    
+    /**
+     * Decodes a fragment of the stream
+     * Bytes are consumed up to the end of the first completed document, so this should be called
+     * until it returns null, to get all of the documents in the fragment.
+     * @param src The fragment, which is read from its position
+     * @return The completed document, or null if more bytes are needed
+     * @throws IOException If the stream doesn't contain a valid document
+     */
+    public SEBlock decode(ByteBuffer src) throws IOException {
+        while(src.hasRemaining()) {
+            int length = Math.min(getNeeded(), src.remaining());
+            
+            if(document == null) src.get(prefix, prefixLength, length);
+            else src.get(document, filled, length);
+            
+            SEBlock block = advance(length);
+            if(block != null) return block;
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Reads from a channel until a document is complete or the channel runs dry
+     * Only the bytes of the current document are read, so nothing past the end of it is consumed.
+     * @param channel The channel to read from
+     * @return The completed document, or null if more bytes are needed or the channel has ended
+     * @throws IOException If reading fails, the stream doesn't contain a valid document,
+     *                     or the channel ended in the middle of a document
+     */
+    public SEBlock read(ReadableByteChannel channel) throws IOException {
+        while(true) {
+            int needed = getNeeded();
+            ByteBuffer target = document == null
+                    ? ByteBuffer.wrap(prefix, prefixLength, needed)
+                    : ByteBuffer.wrap(document, filled, needed);
+            
+            int read = channel.read(target);
+            if(read < 0) {
+                endOfStream = true;
+                if(isPartial()) throw new EOFException("Stream ended in the middle of a document");
+                return null;
+            }
+            if(read == 0) return null;
+            
+            SEBlock block = advance(read);
+            if(block != null) return block;
+        }
+    }
+    
+    /**
+     * Gets the amount of bytes that can be consumed before the decoder's state changes
+     * @return The amount of bytes needed for the next step
+     */
+    public int getNeeded() {
+        if(document != null) return document.length - filled;
+        if(prefixLength < SIZE_START) return SIZE_START - prefixLength;
+        if(fixedSize) return SIZE_START + Integer.BYTES - prefixLength;
+        
+        //Varints are read a byte at a time, to not read past the end of the field
+        return 1;
+    }
+    
+    /**
+     * Checks if part of a document has been received
+     * @return True if the decoder is in the middle of a document
+     */
+    public boolean isPartial() {
+        return prefixLength > 0 || document != null;
+    }
+    
+    /**
+     * Checks if a channel read by the decoder has ended
+     * @return True if the end of the channel was reached
+     */
+    public boolean isEndOfStream() {
+        return endOfStream;
+    }
+    
+    /**
+     * Drops any partially received document
+     */
+    public void reset() {
+        prefixLength = 0;
+        document = null;
+        filled = 0;
+    }
+    
+    /**
+     * Moves the decoder forwards after bytes have been received
+     * @param count The amount of bytes that were received
+     * @return The completed document, or null if more bytes are needed
+     */
+    private SEBlock advance(int count) throws IOException {
+        if(document != null) {
+            filled += count;
+            return filled == document.length ? complete() : null;
+        }
+        
+        prefixLength += count;
+        if(prefixLength == SIZE_START) readHeader();
+        else if(prefixLength > SIZE_START) readFrameSize();
+        return null;
+    }
+    
+    /**
+     * Checks the root header and the type of the root block
+     */
+    private void readHeader() throws IOException {
+        ByteArrayParser parser = new ByteArrayParser(prefix);
+        
+        for(int i = 0; i < SEBase.DBSIG.length; i++) {
+            if(prefix[i] != SEBase.DBSIG[i]) throw invalid("Invalid signature");
+        }
+        for(int i = 0; i < SEBase.HDEND.length; i++) {
+            if(prefix[SEBase.HEADER_SIZE - SEBase.HDEND.length + i] != SEBase.HDEND[i]) throw invalid("Invalid header");
+        }
+        
+        parser.index = SEBase.DBSIG.length;
+        int codecId = parser.getInt();
+        parser.index += Integer.BYTES;
+        SEFormat format = SEFormat.fromFlags(parser.getShort(), dictionary);
+        parser.index = SEBase.HEADER_SIZE;
+        
+        if(codecId != Codec.NONE && Codec.forId(codecId) == null) throw invalid("Unknown codec " + codecId);
+        if(format == null) throw invalid("Unknown flags or missing dictionary");
+        if(parser.getShort() != SEType.ROOT_BLOCK.value()) throw invalid("Not a root block");
+        
+        //Compressed frames always have fixed width sizes
+        fixedSize = codecId != Codec.NONE || !format.isCompact();
+    }
+    
+    /**
+     * Reads the root frame size once all of it has arrived, and starts receiving the rest of the document
+     */
+    private void readFrameSize() throws IOException {
+        ByteArrayParser parser = new ByteArrayParser(prefix);
+        parser.index = SIZE_START;
+        long frameSize;
+        
+        if(fixedSize) {
+            if(prefixLength < SIZE_START + Integer.BYTES) return;
+            frameSize = parser.getInt();
+        } else {
+            if(prefix[prefixLength - 1] < 0) {
+                if(prefixLength == PREFIX_SIZE) throw invalid("Malformed frame size");
+                return;
+            }
+            frameSize = parser.readVarInt();
+        }
+        
+        long length = SEBase.HEADER_SIZE + frameSize + SEBlock.FILE_FOOTER.length;
+        if(frameSize < prefixLength - SEBase.HEADER_SIZE || length > maxSize)
+            throw invalid("Invalid document size " + length);
+        
+        document = new byte[(int) length];
+        System.arraycopy(prefix, 0, document, 0, prefixLength);
+        filled = prefixLength;
+        prefixLength = 0;
+    }
+    
+    /**
+     * Decodes the completed document
+     */
+    private SEBlock complete() throws IOException {
+        byte[] src = document;
+        reset();
+        
+        int footer = src.length - SEBlock.FILE_FOOTER.length;
+        for(int i = 0; i < SEBlock.FILE_FOOTER.length; i++) {
+            if(src[footer + i] != SEBlock.FILE_FOOTER[i]) throw invalid("Missing footer");
+        }
+        
+        return lazy ? new SELazyBlock(src, dictionary) : new SEBlock(src, dictionary);
+    }
+    
+    /**
+     * Creates the exception for an invalid stream, dropping the partial document
+     */
+    private IOException invalid(String message) {
+        reset();
+        return new IOException(message);
+    }
+    
+}
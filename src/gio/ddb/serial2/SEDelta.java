@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2017 DropDemBits <r3usrlnd@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package gio.ddb.serial2;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Diffs two versions of a block, and patches the old version into the new one
+ * A delta is itself a block, so it is stored and sent like any other document.
+ * Each block delta holds an "ops" list of operations, in the order they are applied:
+ * <ul>
+ *  <li>OP_SET: maps "value" to "key" (or to "index" in a list), adding or replacing it</li>
+ *  <li>OP_REMOVE: removes "key"</li>
+ *  <li>OP_BLOCK / OP_LIST: applies the nested "delta" to the block or list at "key" or "index"</li>
+ * </ul>
+ * List deltas also have the new "length" of the list.
+ * Names that are only in the new version are appended, so the patched block may order its names differently.
+ * @author DropDemBits <r3usrlnd@gmail.com>
+ */
+public final class SEDelta {
+
+    public static final byte OP_SET = 0;
+    public static final byte OP_REMOVE = 1;
+    public static final byte OP_BLOCK = 2;
+    public static final byte OP_LIST = 3;
+
+    /**
+     * The names used inside of deltas. Deltas are serialized with this dictionary, in the compact format
+     */
+    public static final SEKeyDictionary KEYS = new SEKeyDictionary("ops", "op", "key", "index", "value", "delta", "length");
+    /**
+     * The format deltas are serialized in
+     */
+    public static final SEFormat FORMAT = SEFormat.COMPACT.withDictionary(KEYS);
+
+    private SEDelta() {}
+
+    /**
+     * Diffs two versions of a block
+     * Values from the new version are copied into the delta, so neither block is modified
+     * @param from The old version
+     * @param to The new version
+     * @return The delta, which serializes in the delta format
+     */
+    public static SEBlock diff(SEBlock from, SEBlock to) {
+        SEBlock delta = diffBlock(from, to);
+        if(delta == null) delta = new SEBlock();
+        delta.setFormat(FORMAT);
+        return delta;
+    }
+
+    /**
+     * Diffs the serialized forms of two versions of a block
+     * @param from The old version
+     * @param to The new version
+     * @return The serialized delta
+     */
+    public static byte[] diff(byte[] from, byte[] to) {
+        return diff(new SEBlock(from), new SEBlock(to)).getSerialized();
+    }
+
+    /**
+     * Reads a serialized delta
+     * @param src The serialized delta
+     * @return The delta
+     */
+    public static SEBlock read(byte[] src) {
+        return new SEBlock(src, KEYS);
+    }
+
+    /**
+     * Patches a block into the version a delta was made for
+     * Values are copied out of the delta, so it can be applied more than once
+     * @param target The old version, which is modified in place
+     * @param delta The delta between the old and new versions
+     * @return True if the delta was applied, or false if it was malformed or doesn't match the target.
+     *         The target may be partially patched if it failed
+     */
+    public static boolean apply(SEBlock target, SEBlock delta) {
+        if(applyBlock(target, delta)) return true;
+
+        if(Serializable.DEBUG) System.err.println("Delta doesn't match the target");
+        return false;
+    }
+
+    /**
+     * Patches the serialized form of a block into the version a delta was made for
+     * @param from The serialized old version
+     * @param delta The serialized delta
+     * @return The serialized new version, or null if the delta couldn't be applied
+     */
+    public static byte[] apply(byte[] from, byte[] delta) {
+        SEBlock target = new SEBlock(from);
+        if(!apply(target, read(delta))) return null;
+        return target.getSerialized();
+    }
+
+    /**
+     * Diffs two blocks
+     * @return The delta, or null if they are the same
+     */
+    private static SEBlock diffBlock(SEBlock from, SEBlock to) {
+        SEList ops = new SEList();
+        int count = 0;
+        List<String> names = to.getNames();
+        Set<String> kept = new HashSet<>(names);
+
+        for(String name : from.getNames()) {
+            if(kept.contains(name)) continue;
+
+            SEBlock op = new SEBlock();
+            op.setValue("op", OP_REMOVE);
+            op.setValue("key", name);
+            ops.setValue(count++, op);
+        }
+
+        for(String name : names) {
+            SEBlock op = diffValue(from.getValue(name), to.getValue(name));
+            if(op == null) continue;
+
+            op.setValue("key", name);
+            ops.setValue(count++, op);
+        }
+
+        if(count == 0) return null;
+        SEBlock delta = new SEBlock();
+        delta.setValue("ops", ops);
+        return delta;
+    }
+
+    /**
+     * Diffs two lists
+     * @return The delta, or null if they are the same
+     */
+    private static SEBlock diffList(SEList from, SEList to) {
+        SEList ops = new SEList();
+        int count = 0;
+        int length = to.valueMap.size();
+
+        for(int i = 0; i < length; i++) {
+            Serializable old = i < from.valueMap.size() ? from.valueMap.get(i) : null;
+            SEBlock op = diffValue(old, to.valueMap.get(i));
+            if(op == null) continue;
+
+            op.setValue("index", i);
+            ops.setValue(count++, op);
+        }
+
+        if(count == 0 && length == from.valueMap.size()) return null;
+        SEBlock delta = new SEBlock();
+        if(count > 0) delta.setValue("ops", ops);
+        delta.setValue("length", length);
+        return delta;
+    }
+
+    /**
+     * Diffs two values, recursing into blocks and lists
+     * @return The operation (without its key or index), or null if nothing changed
+     */
+    private static SEBlock diffValue(Serializable from, Serializable to) {
+        if(to == null) return null;
+        SEBlock op = new SEBlock();
+
+        if(from instanceof SEBlock && to instanceof SEBlock) {
+            SEBlock delta = diffBlock((SEBlock) from, (SEBlock) to);
+            if(delta == null) return null;
+            op.setValue("op", OP_BLOCK);
+            op.setValue("delta", delta);
+        } else if(from instanceof SEList && to instanceof SEList) {
+            SEList fromList = (SEList) from, toList = (SEList) to;
+            SEBlock delta = diffList(fromList, toList);
+            if(delta == null) return null;
+            op.setValue("op", OP_LIST);
+            op.setValue("delta", delta);
+        } else {
+            if(from != null && from.getType() == to.getType() && Arrays.equals(from.getSerialized(), to.getSerialized())) return null;
+            return setOp(to);
+        }
+
+        //Replacing the whole value is smaller than a large nested delta
+        if(op.getSize() >= to.getSize()) return setOp(to);
+        return op;
+    }
+
+    private static SEBlock setOp(Serializable value) {
+        SEBlock op = new SEBlock();
+        op.setValue("op", OP_SET);
+        op.setValue("value", SEBase.copy(value));
+        return op;
+    }
+
+    /**
+     * Applies a block delta
+     * @return False if the delta is malformed or doesn't match
+     */
+    private static boolean applyBlock(SEBlock target, SEBlock delta) {
+        if(delta == null) return false;
+        Serializable ops = delta.getValue("ops");
+        if(ops == null) return true;
+        if(!(ops instanceof SEList)) return false;
+
+        for(Serializable entry : ((SEList) ops).valueMap) {
+            if(!(entry instanceof SEBlock)) return false;
+            SEBlock op = (SEBlock) entry;
+            Serializable key = op.getValue("key");
+            if(!(key instanceof SEString)) return false;
+            String name = ((SEString) key).getValue();
+
+            switch(op.getByte("op")) {
+                case OP_SET: {
+                    Serializable value = op.getValue("value");
+                    if(value == null) return false;
+                    target.setValue(name, SEBase.copy(value));
+                    break;
+                }
+                case OP_REMOVE:
+                    target.remove(name);
+                    break;
+                case OP_BLOCK: {
+                    Serializable child = target.getValue(name);
+                    if(!(child instanceof SEBlock) || !applyBlock((SEBlock) child, op.getBlock("delta"))) return false;
+                    break;
+                }
+                case OP_LIST: {
+                    Serializable child = target.getValue(name);
+                    SEList patched = child instanceof SEList ? applyList((SEList) child, op.getBlock("delta")) : null;
+                    if(patched == null) return false;
+                    if(patched != child) target.setValue(name, patched);
+                    break;
+                }
+                default:
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Applies a list delta
+     * Lists can't shrink in place, so a shorter list is rebuilt
+     * @return The patched list, or null if the delta is malformed or doesn't match
+     */
+    private static SEList applyList(SEList target, SEBlock delta) {
+        if(delta == null) return null;
+        int length = delta.getValue("length") == null ? target.valueMap.size() : delta.getInt("length");
+        if(length < 0) return null;
+
+        SEList result = target;
+        if(length < target.valueMap.size()) {
+            result = new SEList();
+            for(int i = 0; i < length; i++) {
+                Serializable value = target.valueMap.get(i);
+                if(value == null) return null;
+                result.setValue(i, value);
+            }
+        }
+
+        Serializable ops = delta.getValue("ops");
+        if(ops == null) return result;
+        if(!(ops instanceof SEList)) return null;
+
+        for(Serializable entry : ((SEList) ops).valueMap) {
+            if(!(entry instanceof SEBlock)) return null;
+            SEBlock op = (SEBlock) entry;
+            if(op.getValue("index") == null) return null;
+            int index = op.getInt("index");
+            if(index < 0 || index >= length || index > result.valueMap.size()) return null;
+            Serializable child = index < result.valueMap.size() ? result.valueMap.get(index) : null;
+
+            switch(op.getByte("op")) {
+                case OP_SET: {
+                    Serializable value = op.getValue("value");
+                    if(value == null) return null;
+                    result.setValue(index, SEBase.copy(value));
+                    break;
+                }
+                case OP_BLOCK:
+                    if(!(child instanceof SEBlock) || !applyBlock((SEBlock) child, op.getBlock("delta"))) return null;
+                    break;
+                case OP_LIST: {
+                    SEList patched = child instanceof SEList ? applyList((SEList) child, op.getBlock("delta")) : null;
+                    if(patched == null) return null;
+                    if(patched != child) result.setValue(index, patched);
+                    break;
+                }
+                default:
+                    return null;
+            }
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2017 DropDemBits <r3usrlnd@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package gio.ddb.serial2;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Reads a sequence of root blocks written by SEDocumentWriter
+ * Records are length prefixed, so reading or skipping a record only reads that record.
+ * @author DropDemBits <r3usrlnd@gmail.com>
+ */
+public class SEDocumentReader implements Closeable {
+    
+    /* The stream being read from */
+    private final DataInputStream in;
+    /* The dictionary the documents were serialized with */
+    private final SEKeyDictionary dictionary;
+    /* Reads the record fields */
+    private final byte[] field = new byte[Integer.BYTES];
+    private final boolean checksums;
+    private final CRC32 crc = new CRC32();
+    /* Limits */
+    private int maxSize = SEDecoder.DEFAULT_MAX_SIZE;
+    private boolean lazy;
+    
+    /**
+     * Creates a new reader and reads the stream header
+     * @param in The stream to read from
+     * @throws IOException If reading fails or the stream header is invalid
+     */
+    public SEDocumentReader(InputStream in) throws IOException {
+        this(in, null);
+    }
+    
+    /**
+     * Creates a new reader for documents that may use a shared key dictionary, and reads the stream header
+     * @param in The stream to read from
+     * @param dictionary The dictionary the documents were serialized with, or null if there is none
+     * @throws IOException If reading fails or the stream header is invalid
+     */
+    public SEDocumentReader(InputStream in, SEKeyDictionary dictionary) throws IOException {
+        this.in = new DataInputStream(in);
+        this.dictionary = dictionary;
+        
+        byte[] header = new byte[SEDocumentWriter.STREAM_HEADER_SIZE];
+        this.in.readFully(header);
+        for(int i = 0; i < SEDocumentWriter.STREAM_SIG.length; i++) {
+            if(header[i] != SEDocumentWriter.STREAM_SIG[i]) throw new IOException("Not a document stream");
+        }
+        
+        ByteArrayParser parser = new ByteArrayParser(header);
+        parser.index = SEDocumentWriter.STREAM_SIG.length;
+        short version = parser.getShort();
+        parser.index += Short.BYTES;
+        short flags = parser.getShort();
+        
+        if(version != SEDocumentWriter.VERSION) throw new IOException("Unknown stream version " + version);
+        if((flags & ~SEDocumentWriter.FLAG_CHECKSUMS) != 0) throw new IOException("Unknown stream flags " + flags);
+        checksums = (flags & SEDocumentWriter.FLAG_CHECKSUMS) != 0;
+    }
+    
+    /**
+     * Creates a new reader and reads the stream header
+     * @param channel The (blocking) channel to read from
+     * @throws IOException If reading fails or the stream header is invalid
+     */
+    public SEDocumentReader(ReadableByteChannel channel) throws IOException {
+        this(Channels.newInputStream(channel), null);
+    }
+    
+    /**
+     * Creates a new reader for documents that may use a shared key dictionary, and reads the stream header
+     * @param channel The (blocking) channel to read from
+     * @param dictionary The dictionary the documents were serialized with, or null if there is none
+     * @throws IOException If reading fails or the stream header is invalid
+     */
+    public SEDocumentReader(ReadableByteChannel channel, SEKeyDictionary dictionary) throws IOException {
+        this(Channels.newInputStream(channel), dictionary);
+    }
+    
+    /**
+     * Sets the largest record the reader accepts, to guard against bogus lengths
+     * Defaults to SEDecoder.DEFAULT_MAX_SIZE
+     * @param maxSize The largest document size
+     */
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+    
+    /**
+     * Sets whether documents are returned as SELazyBlocks
+     * @param lazy True to return lazy blocks
+     */
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+    
+    /**
+     * Checks if the stream has per record checksums
+     * @return True if every record is checked against a CRC32
+     */
+    public boolean hasChecksums() {
+        return checksums;
+    }
+    
+    /**
+     * Reads the next document
+     * @return The next document, or null if the end of the stream was reached
+     * @throws IOException If reading fails, the stream ends in the middle of a record or a checksum doesn't match
+     */
+    public SEBlock next() throws IOException {
+        byte[] document = nextRecord();
+        if(document == null) return null;
+        return lazy ? new SELazyBlock(document, dictionary) : new SEBlock(document, dictionary);
+    }
+    
+    /**
+     * Reads the next serialized document, without decoding it
+     * @return The serialized document, or null if the end of the stream was reached
+     * @throws IOException If reading fails, the stream ends in the middle of a record or a checksum doesn't match
+     */
+    public byte[] nextRecord() throws IOException {
+        int length = readLength();
+        if(length < 0) return null;
+        
+        byte[] document = new byte[length];
+        in.readFully(document);
+        
+        if(checksums) {
+            crc.reset();
+            crc.update(document, 0, length);
+            if(readField() != (int) crc.getValue()) throw new IOException("Record checksum mismatch");
+        }
+        
+        return document;
+    }
+    
+    /**
+     * Skips the next document, without reading or checking it
+     * @return True if a document was skipped, or false if the end of the stream was reached
+     * @throws IOException If reading fails or the stream ends in the middle of a record
+     */
+    public boolean skip() throws IOException {
+        int length = readLength();
+        if(length < 0) return false;
+        
+        int skip = length + (checksums ? Integer.BYTES : 0);
+        while(skip > 0) {
+            int skipped = in.skipBytes(skip);
+            if(skipped == 0) {
+                //skipBytes() may stop early, so check for the end of the stream
+                if(in.read() < 0) throw new EOFException("Stream ended in the middle of a record");
+                skipped = 1;
+            }
+            skip -= skipped;
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Reads the length of the next record
+     * @return The length, or -1 if the stream ended cleanly before the record
+     */
+    private int readLength() throws IOException {
+        int first = in.read();
+        if(first < 0) return -1;
+        
+        field[0] = (byte) first;
+        in.readFully(field, 1, Integer.BYTES - 1);
+        int length = new ByteArrayParser(field).getInt();
+        
+        if(length < 0 || length > maxSize) throw new IOException("Invalid record length " + length);
+        return length;
+    }
+    
+    /**
+     * Reads a little endian int field
+     */
+    private int readField() throws IOException {
+        in.readFully(field);
+        return new ByteArrayParser(field).getInt();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+    
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2017 DropDemBits <r3usrlnd@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package gio.ddb.serial2;
+
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Writes a sequence of root blocks to one stream
+ * The stream starts with a stream header (STREAM_SIG, the version and the flags), followed by one record
+ * per document: the length of the document, the serialized document and, if enabled, a CRC32 of it.
+ * Each document keeps its own root header & footer, so a record can be decoded on its own.
+ * @author DropDemBits <r3usrlnd@gmail.com>
+ */
+public class SEDocumentWriter implements Closeable {
+    
+    public static final byte[] STREAM_SIG = "SDBS".getBytes();
+    public static final short VERSION = 1;
+    public static final int STREAM_HEADER_SIZE = STREAM_SIG.length + Short.BYTES + Short.BYTES;
+    /**
+     * Flag set when every record is followed by a CRC32 of the document
+     */
+    public static final short FLAG_CHECKSUMS = 0x1;
+    
+    /* The stream being written to */
+    private final OutputStream sink;
+    /* Checksums the document bytes */
+    private final RecordStream out;
+    /* Streams uncompressed documents without building the whole array */
+    private final ByteStreamParser parser;
+    /* Writes the record fields */
+    private final ByteArrayParser fields = new ByteArrayParser(Integer.BYTES);
+    private final boolean checksums;
+    
+    /**
+     * Creates a new writer and writes the stream header
+     * @param out The stream to write to
+     * @param checksums Whether to write a CRC32 after every document
+     * @throws IOException If writing the stream header fails
+     */
+    public SEDocumentWriter(OutputStream out, boolean checksums) throws IOException {
+        this.sink = out;
+        this.out = new RecordStream(out);
+        this.parser = new ByteStreamParser(this.out);
+        this.checksums = checksums;
+        
+        ByteArrayParser header = new ByteArrayParser(STREAM_HEADER_SIZE);
+        header.addBytes(STREAM_SIG);
+        header.addShort(VERSION);
+        header.addShort(checksums ? FLAG_CHECKSUMS : 0);
+        out.write(header.toBytes());
+    }
+    
+    /**
+     * Creates a new writer and writes the stream header
+     * @param channel The (blocking) channel to write to
+     * @param checksums Whether to write a CRC32 after every document
+     * @throws IOException If writing the stream header fails
+     */
+    public SEDocumentWriter(WritableByteChannel channel, boolean checksums) throws IOException {
+        this(Channels.newOutputStream(channel), checksums);
+    }
+    
+    /**
+     * Writes a document as the next record
+     * Blocks that can be changed on other threads are copied first, so the length always matches the document
+     * @param block The root block to write
+     * @throws IOException If writing fails
+     */
+    public void write(SEBlock block) throws IOException {
+        //The length and the document have to come from the same version
+        SEBlock document = (SEBlock) block.freeze();
+        
+        //Compressed sizes are only known after compressing
+        ByteArrayParser serialized = document.getCodec() != null ? document.serialize(ByteArrayPool.SHARED) : null;
+        int length = serialized != null ? serialized.index : document.getSize(document.getFormat());
+        
+        writeField(length);
+        out.startRecord();
+        if(serialized != null) {
+            out.write(serialized.toBytes(), 0, length);
+            serialized.release();
+        } else {
+            parser.write(document);
+        }
+        
+        if(checksums) writeField((int) out.crc.getValue());
+    }
+    
+    /**
+     * Writes a little endian int field
+     */
+    private void writeField(int value) throws IOException {
+        fields.index = 0;
+        fields.addInt(value);
+        sink.write(fields.toBytes(), 0, Integer.BYTES);
+    }
+    
+    /**
+     * Flushes the stream
+     * @throws IOException If flushing fails
+     */
+    public void flush() throws IOException {
+        out.flush();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+    
+    /**
+     * Stream that checksums the bytes of the current record
+     */
+    private static class RecordStream extends FilterOutputStream {
+        
+        final CRC32 crc = new CRC32();
+        
+        RecordStream(OutputStream out) {
+            super(out);
+        }
+        
+        void startRecord() {
+            crc.reset();
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            crc.update(b);
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            crc.update(b, off, len);
+        }
+        
+    }
+    
+}
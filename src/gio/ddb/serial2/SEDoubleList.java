@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2017 DropDemBits <r3usrlnd@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package gio.ddb.serial2;
+
+import gio.ddb.serial2.types.PrimativeTypes.Primatives;
+
+/**
+ * List of doubles, backed by a double array
+ * @author DropDemBits <r3usrlnd@gmail.com>
+ */
+public class SEDoubleList extends SETypedList<double[]> {
+
+    /**
+     * Creates a new, empty SEDoubleList
+     */
+    public SEDoubleList() {
+        super(Primatives.DOUBLE);
+    }
+    
+    /**
+     * Creates a new SEDoubleList holding a copy of an array
+     * @param src The values to copy
+     */
+    public SEDoubleList(double[] src) {
+        this();
+        addAll(src);
+    }
+    
+    /**
+     * Creates a new SEDoubleList from a byte array, reading it in place
+     * @param src The array to parse
+     * @param offset The offset of the serialized list in the array
+     * @param length The length of the serialized list
+     */
+    public SEDoubleList(byte[] src, int offset, int length) {
+        this(SETypedList.parserAt(src, offset), length);
+    }
+    
+    /**
+     * Creates a new SEDoubleList from a parser, reading it in place
+     * The index of the parser is left in an undefined place
+     * @param src The parser containing the list, with the index pointing at the start of it
+     * @param length The length of the serialized list
+     */
+    SEDoubleList(ByteArrayParser src, int length) {
+        super(Primatives.DOUBLE, src, length);
+    }
+    
+    /**
+     * Gets the double at the specified index
+     * @param index The index to get the double from
+     * @return The double, or zero if the index is out of bounds
+     */
+    public double get(int index) {
+        if(index < 0 || index >= length) return 0;
+        return values[index];
+    }
+    
+    /**
+     * Copies a range of doubles into an array
+     * @param index The index of the first double to copy
+     * @param dest The array to copy into
+     * @param offset The offset into dest to start copying to
+     * @param count The amount of doubles to copy
+     */
+    public void get(int index, double[] dest, int offset, int count) {
+        getRange(index, dest, offset, count);
+    }
+    
+    /**
+     * Sets the double at the specified index
+     * Will append if the index is the length of the list, and will not do anything if the index is past it
+     * @param index The index to set the double at
+     * @param value The double to set
+     */
+    public void set(int index, double value) {
+        if(!reserve(index, 1)) return;
+        values[index] = value;
+        written(index + 1);
+    }
+    
+    /**
+     * Sets a range of doubles, extending the list if the range goes past the end
+     * Will not do anything if the index is past the end of the list
+     * @param index The index to start setting doubles at
+     * @param src The array to copy from
+     * @param offset The offset into src to start copying from
+     * @param count The amount of doubles to copy
+     */
+    public void set(int index, double[] src, int offset, int count) {
+        setRange(index, src, offset, count);
+    }
+    
+    /**
+     * Appends a double
+     * @param value The double to append
+     */
+    public void add(double value) {
+        set(length, value);
+    }
+    
+    /**
+     * Appends all of the doubles in an array
+     * @param src The doubles to append
+     */
+    public void addAll(double[] src) {
+        addAll(src, 0, src.length);
+    }
+    
+    /**
+     * Appends a range of doubles from an array
+     * @param src The array to copy from
+     * @param offset The offset into src to start copying from
+     * @param count The amount of doubles to copy
+     */
+    public void addAll(double[] src, int offset, int count) {
+        set(length, src, offset, count);
+    }
+    
+    /**
+     * Copies the doubles into a new array
+     * @return A new array containing all of the doubles
+     */
+    public double[] toArray() {
+        return copyValues();
+    }
+    
+    @Override
+    protected double[] newArray(int capacity) {
+        return new double[capacity];
+    }
+    
+    @Override
+    protected void readValues(ByteArrayParser src, int count) {
+        src.getDoubles(values, 0, count);
+    }
+    
+    @Override
+    protected void writeValues(ByteArrayParser dest) {
+        dest.addDoubles(values, 0, length);
+    }
+    
+}
@@ -0,0 +1,398 @@
+/*
+ * Copyright (C) 2017 DropDemBits <r3usrlnd@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package gio.ddb.serial2;
+
+import gio.ddb.serial2.types.PrimativeTypes;
+import gio.ddb.serial2.types.PrimativeTypes.Primatives;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Index of the entries of a serialized block, read in place without deserializing the values
+ * Shared by the blocks that read from their serialized version (SELazyBlock and SEBlockView).
+ * The entry headers are only indexed the first time they are needed; until then, names are looked up through
+ * the key index if the block has one. Malformed frames and entries are treated as the end of the block.
+ * @author DropDemBits <r3usrlnd@gmail.com>
+ */
+final class SEEntryIndex {
+    
+    /* Little endian view of the data. Offsets are absolute */
+    private final ByteBuffer buffer;
+    /* The wire format of the block */
+    private final SEFormat format;
+    /**
+     * Whether the frame is valid
+     */
+    private boolean valid;
+    /* Bounds of the string table and the data */
+    private int stringsStart, stringsEnd, dataStart, dataEnd;
+    /* The key index, if the format has one */
+    private int indexStart, indexCount;
+    /**
+     * Amount of entries in the block, or -1 if the entries haven't been indexed yet
+     */
+    private int entryCount = -1;
+    /* Entry index. Dictionary keys have negative key offsets (-1 - ID) */
+    private int[] keyHashes;
+    private int[] keyOffsets;
+    private int[] valueOffsets;
+    private int[] valueSizes;
+    /**
+     * Key hashes of the entries sorted by hash, from SEBase.sortHashes()
+     */
+    private long[] sortedHashes;
+    /**
+     * The position readField() and readVarLong() read from, which they move past what they read
+     */
+    int cursor;
+    
+    /**
+     * Reads the bounds of the string table, the key index and the data
+     * @param buffer The little endian buffer holding the block
+     * @param format The wire format of the block
+     * @param base The start of the block, including the root header
+     * @param offset The start of the block's type
+     * @param end The end of the block's data
+     */
+    SEEntryIndex(ByteBuffer buffer, SEFormat format, int base, int offset, int end) {
+        this.buffer = buffer;
+        this.format = format;
+        
+        dataEnd = end;
+        cursor = offset + Short.BYTES;
+        if(readField() < 0) return;
+        
+        if(format.isCompact()) {
+            int stringSize = readField();
+            stringsStart = cursor;
+            stringsEnd = dataStart = stringsStart + stringSize;
+            valid = stringSize >= 0 && stringsStart <= stringsEnd && stringsEnd <= dataEnd;
+        } else {
+            stringsStart = cursor + Integer.BYTES;
+            int stringsOffset = readField();
+            stringsEnd = dataStart = base + stringsOffset + Integer.BYTES;
+            valid = stringsOffset >= 0 && stringsStart <= stringsEnd && stringsEnd <= dataEnd;
+        }
+        
+        if(valid && format.isIndexed()) {
+            cursor = stringsEnd;
+            indexCount = readField();
+            indexStart = cursor;
+            valid = indexCount >= 0 && indexCount <= (dataEnd - indexStart) / SEBase.INDEX_ENTRY_SIZE;
+            dataStart = indexStart + indexCount * SEBase.INDEX_ENTRY_SIZE;
+        }
+    }
+    
+    /**
+     * Checks if the frame is valid
+     * @return True if the bounds of the string table, key index and data are valid
+     */
+    boolean isValid() {
+        return valid;
+    }
+    
+    /**
+     * Reads a size, length or offset field in the block's format at the cursor
+     * @return The value of the field, or -1 if it is malformed
+     */
+    int readField() {
+        if(!format.isCompact()) {
+            if(cursor < 0 || cursor + Integer.BYTES > buffer.limit()) return -1;
+            int value = buffer.getInt(cursor);
+            cursor += Integer.BYTES;
+            return value;
+        }
+        
+        long value = readVarLong();
+        return value >>> 32 != 0 ? -1 : (int) value;
+    }
+    
+    /**
+     * Reads an unsigned LEB128 varint at the cursor
+     * @return The value of the varint, or -1 if it is malformed
+     */
+    long readVarLong() {
+        long value = 0;
+        for(int shift = 0; shift < Long.SIZE && cursor >= 0 && cursor < buffer.limit(); shift += 7) {
+            byte b = buffer.get(cursor++);
+            value |= (b & 0x7FL) << shift;
+            if(b >= 0) return value;
+        }
+        return -1;
+    }
+    
+    /**
+     * Gets the size of a serialized value, including the type
+     * @param offset The offset of the value, which must leave room for the type
+     * @return The size of the value, or -1 if it is malformed
+     */
+    private int getSerialSize(int offset) {
+        short type = buffer.getShort(offset);
+        cursor = offset + Short.BYTES;
+        
+        if((type & 0xFF) == SEType.PRIMATIVE.value()) {
+            int primative = type >> 8;
+            if(primative < 0 || primative >= Primatives.values().length) return -1;
+            if(!PrimativeTypes.isVarint(Primatives.values()[primative], format))
+                return Short.BYTES + Primatives.values()[primative].size;
+            
+            readVarLong();
+            return cursor - offset;
+        }
+        
+        return readField();
+    }
+    
+    /**
+     * Reads the key field of an entry at the cursor
+     * @return The key offset (-1 - ID for dictionary keys), or Integer.MIN_VALUE if the field is malformed
+     */
+    private int readKeyOffset() {
+        int keyField = readField();
+        if(keyField < 0) return Integer.MIN_VALUE;
+        
+        //Dictionary keys are stored as negative offsets
+        if(format.getDictionary() != null && (keyField & 1) != 0) return -1 - (keyField >>> 1);
+        int keyOffset = (format.getDictionary() == null ? keyField : keyField >>> 1) + stringsStart;
+        return keyOffset < 0 ? Integer.MIN_VALUE : keyOffset;
+    }
+    
+    /**
+     * Gets the size of the value at an offset, if it fits in the data
+     * @param start The offset of the value
+     * @return The size of the value, or -1 if it is malformed or a root block
+     */
+    private int getEntrySize(int start) {
+        if(start < dataStart || start + Short.BYTES > dataEnd || buffer.getShort(start) == SEType.ROOT_BLOCK.value()) return -1;
+        int serialSize = getSerialSize(start);
+        return serialSize <= 0 || serialSize > dataEnd - start ? -1 : serialSize;
+    }
+    
+    /**
+     * Indexes the entries of the block, without reading the values
+     */
+    void indexEntries() {
+        if(entryCount >= 0) return;
+        
+        int capacity = 8;
+        keyHashes = new int[capacity];
+        keyOffsets = new int[capacity];
+        valueOffsets = new int[capacity];
+        valueSizes = new int[capacity];
+        entryCount = 0;
+        sortedHashes = new long[0];
+        
+        if(!valid) return;
+        
+        int minEntrySize = (format.isCompact() ? 1 : Integer.BYTES) + Short.BYTES;
+        int position = dataStart;
+        
+        while(position + minEntrySize <= dataEnd) {
+            cursor = position;
+            int keyOffset = readKeyOffset();
+            int start = cursor;
+            if(keyOffset == Integer.MIN_VALUE) break;
+            int serialSize = getEntrySize(start);
+            if(serialSize < 0) break;
+            
+            if(entryCount == capacity) {
+                capacity *= 2;
+                keyHashes = Arrays.copyOf(keyHashes, capacity);
+                keyOffsets = Arrays.copyOf(keyOffsets, capacity);
+                valueOffsets = Arrays.copyOf(valueOffsets, capacity);
+                valueSizes = Arrays.copyOf(valueSizes, capacity);
+            }
+            
+            keyHashes[entryCount] = keyOffset < 0 ? SEBase.hashKey(SEBase.encodeString(getKey(keyOffset))) : hashKey(keyOffset);
+            keyOffsets[entryCount] = keyOffset;
+            valueOffsets[entryCount] = start;
+            valueSizes[entryCount] = serialSize;
+            entryCount++;
+            
+            position = start + serialSize;
+        }
+        
+        sortedHashes = SEBase.sortHashes(keyHashes, entryCount);
+    }
+    
+    /**
+     * Gets the amount of entries in the block, indexing them if needed
+     * @return The amount of entries
+     */
+    int size() {
+        indexEntries();
+        return entryCount;
+    }
+    
+    /**
+     * Finds the entry mapped to a name
+     * Until the entries are indexed, blocks with a key index are probed instead. The entry found by a probe
+     * is put in the entry arrays as the only entry, and isn't kept after the next lookup.
+     * @param name The name to look for
+     * @return The index of the entry, or -1 if none was found
+     */
+    int indexOf(String name) {
+        if(!valid) return -1;
+        if(entryCount < 0 && format.isIndexed()) return probe(name);
+        indexEntries();
+        
+        SEKeyDictionary dictionary = format.getDictionary();
+        int id = dictionary == null ? -1 : dictionary.getId(name);
+        byte[] key = SEBase.encodeString(name);
+        int hash = SEBase.hashKey(key);
+        
+        for(int p = SEBase.findHash(sortedHashes, hash); p < entryCount && (int) (sortedHashes[p] >> 32) == hash; p++) {
+            int i = (int) sortedHashes[p];
+            if(keyMatches(keyOffsets[i], key, id)) return i;
+        }
+        
+        return -1;
+    }
+    
+    /**
+     * Finds the entry mapped to a name through the key index, without indexing the other entries
+     * @return The index of the entry (always 0), or -1 if none was found
+     */
+    private int probe(String name) {
+        if(keyOffsets == null) {
+            keyOffsets = new int[1];
+            valueOffsets = new int[1];
+            valueSizes = new int[1];
+        }
+        
+        SEKeyDictionary dictionary = format.getDictionary();
+        int id = dictionary == null ? -1 : dictionary.getId(name);
+        byte[] key = SEBase.encodeString(name);
+        int hash = SEBase.hashKey(key);
+        
+        //Find the first entry with the hash
+        int low = 0, high = indexCount;
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+            if(buffer.getInt(indexStart + mid * SEBase.INDEX_ENTRY_SIZE) < hash) low = mid + 1;
+            else high = mid;
+        }
+        
+        for(int i = low; i < indexCount; i++) {
+            int entry = indexStart + i * SEBase.INDEX_ENTRY_SIZE;
+            if(buffer.getInt(entry) != hash) break;
+            
+            int entryOffset = buffer.getInt(entry + Integer.BYTES);
+            if(entryOffset < 0 || entryOffset >= dataEnd - dataStart) continue;
+            cursor = dataStart + entryOffset;
+            int keyOffset = readKeyOffset();
+            int start = cursor;
+            if(keyOffset == Integer.MIN_VALUE || !keyMatches(keyOffset, key, id)) continue;
+            
+            int serialSize = getEntrySize(start);
+            if(serialSize < 0) continue;
+            keyOffsets[0] = keyOffset;
+            valueOffsets[0] = start;
+            valueSizes[0] = serialSize;
+            return 0;
+        }
+        
+        return -1;
+    }
+    
+    /**
+     * Checks if the key of an entry is the same as a name
+     * @param keyOffset The key offset of the entry
+     * @param key The encoded name
+     * @param id The dictionary ID of the name, or -1 if it isn't in the dictionary
+     */
+    private boolean keyMatches(int keyOffset, byte[] key, int id) {
+        //Names in the dictionary are always serialized as their ID
+        if(keyOffset < 0 || id >= 0) return keyOffset == -1 - id;
+        if(keyLength(keyOffset) != key.length) return false;
+        
+        for(int j = 0; j < key.length; j++) {
+            if(buffer.get(keyOffset + Short.BYTES + j) != key[j]) return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Gets the length of a key in the string table
+     * @return The length of the key, or -1 if it is malformed
+     */
+    private int keyLength(int keyOffset) {
+        if(keyOffset < stringsStart || keyOffset + Short.BYTES >= stringsEnd) return -1;
+        int keyLength = buffer.getShort(keyOffset) & 0xFFFF;
+        if(keyOffset + Short.BYTES + keyLength >= stringsEnd || buffer.get(keyOffset + Short.BYTES + keyLength) != 0) return -1;
+        return keyLength;
+    }
+    
+    /**
+     * Hashes the bytes of a key in the string table
+     * @return The hash of the key, or 0 if the key is malformed
+     */
+    private int hashKey(int keyOffset) {
+        int keyLength = keyLength(keyOffset);
+        if(keyLength < 0) return 0;
+        if(buffer.hasArray()) return SEBase.hashKey(buffer.array(), buffer.arrayOffset() + keyOffset + Short.BYTES, keyLength);
+        
+        byte[] key = new byte[keyLength];
+        for(int i = 0; i < keyLength; i++)
+            key[i] = buffer.get(keyOffset + Short.BYTES + i);
+        return SEBase.hashKey(key);
+    }
+    
+    /**
+     * Gets a key from its key offset
+     * @return The key, or an empty string if it is malformed
+     */
+    private String getKey(int keyOffset) {
+        if(keyOffset < 0) return format.getDictionary().getKey(-1 - keyOffset);
+        
+        int keyLength = keyLength(keyOffset);
+        if(keyLength < 0) return "";
+        byte[] key = new byte[keyLength];
+        for(int i = 0; i < keyLength; i++)
+            key[i] = buffer.get(keyOffset + Short.BYTES + i);
+        return new String(key, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Gets the name of an entry
+     * @param entry The index of the entry
+     * @return The name, or an empty string if it is malformed
+     */
+    String getName(int entry) {
+        return getKey(keyOffsets[entry]);
+    }
+    
+    /**
+     * Gets the offset of an entry's value
+     * @param entry The index of the entry
+     * @return The offset of the value, at its type
+     */
+    int getValueOffset(int entry) {
+        return valueOffsets[entry];
+    }
+    
+    /**
+     * Gets the serialized size of an entry's value
+     * @param entry The index of the entry
+     * @return The size of the value, including the type
+     */
+    int getValueSize(int entry) {
+        return valueSizes[entry];
+    }
+    
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2017 DropDemBits <r3usrlnd@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package gio.ddb.serial2;
+
+/**
+ * Wire format of a document, stored in the flags of the root header
+ * Parsers carry the format so that nested values are written and read the same way as the root block
+ * @author DropDemBits <r3usrlnd@gmail.com>
+ */
+public final class SEFormat {
+    
+    /**
+     * Flag for the compact layout
+     * Sizes, string table offsets, list lengths & indices, and int & long primitives are stored as varints
+     */
+    public static final short FLAG_COMPACT = 0x1;
+    /**
+     * Flag for keys from a shared SEKeyDictionary
+     * Block entries refer to dictionary keys by ID, and only other keys are put in the string table
+     */
+    public static final short FLAG_DICTIONARY = 0x2;
+    /**
+     * Flag for the key index
+     * Every block has a table of its key hashes, sorted, mapped to the offsets of their entries
+     */
+    public static final short FLAG_INDEX = 0x4;
+    /**
+     * All of the flags that can be read
+     */
+    public static final short KNOWN_FLAGS = FLAG_COMPACT | FLAG_DICTIONARY | FLAG_INDEX;
+    
+    /**
+     * The fixed width layout
+     */
+    public static final SEFormat DEFAULT = new SEFormat((short) 0, null);
+    /**
+     * The compact layout
+     */
+    public static final SEFormat COMPACT = new SEFormat(FLAG_COMPACT, null);
+    
+    /* The header flags */
+    private final short flags;
+    /* The shared keys, or null if there are none */
+    private final SEKeyDictionary dictionary;
+    
+    private SEFormat(short flags, SEKeyDictionary dictionary) {
+        this.flags = flags;
+        this.dictionary = dictionary;
+    }
+    
+    /**
+     * Gets the format for a set of header flags
+     * @param flags The flags from the root header
+     * @return The format, or null if any of the flags are unknown or a dictionary is needed
+     */
+    public static SEFormat fromFlags(short flags) {
+        return fromFlags(flags, null);
+    }
+    
+    /**
+     * Gets the format for a set of header flags
+     * @param flags The flags from the root header
+     * @param dictionary The dictionary to use if the flags call for one
+     * @return The format, or null if any of the flags are unknown or a dictionary is needed but not given
+     */
+    public static SEFormat fromFlags(short flags, SEKeyDictionary dictionary) {
+        if((flags & ~KNOWN_FLAGS) != 0) return null;
+        SEFormat format = (flags & FLAG_COMPACT) != 0 ? COMPACT : DEFAULT;
+        if((flags & FLAG_INDEX) != 0) format = format.withIndex(true);
+        
+        if((flags & FLAG_DICTIONARY) == 0) return format;
+        if(dictionary == null) return null;
+        return format.withDictionary(dictionary);
+    }
+    
+    /**
+     * Gets this format with keys from a shared dictionary
+     * @param dictionary The dictionary to use, or null for none
+     * @return The format using the dictionary
+     */
+    public SEFormat withDictionary(SEKeyDictionary dictionary) {
+        if(dictionary == this.dictionary) return this;
+        if(dictionary == null) return new SEFormat((short) (flags & ~FLAG_DICTIONARY), null);
+        return new SEFormat((short) (flags | FLAG_DICTIONARY), dictionary);
+    }
+    
+    /**
+     * Gets this format with or without the key index
+     * @param indexed True to write a key index in every block
+     * @return The format with or without the key index
+     */
+    public SEFormat withIndex(boolean indexed) {
+        short newFlags = (short) (indexed ? flags | FLAG_INDEX : flags & ~FLAG_INDEX);
+        return newFlags == flags ? this : new SEFormat(newFlags, dictionary);
+    }
+    
+    /**
+     * Gets the flags stored in the root header
+     * @return The header flags
+     */
+    public short getFlags() {
+        return flags;
+    }
+    
+    /**
+     * Gets the shared dictionary keys are taken from
+     * @return The dictionary, or null if there is none
+     */
+    public SEKeyDictionary getDictionary() {
+        return dictionary;
+    }
+    
+    /**
+     * Checks if this is the default layout, which has the sizes given by getSize()
+     * @return True if no flags are set
+     */
+    public boolean isDefault() {
+        return flags == 0;
+    }
+    
+    /**
+     * Checks if this is the compact layout
+     * @return True if sizes, offsets, indices and int & long primitives are varints
+     */
+    public boolean isCompact() {
+        return (flags & FLAG_COMPACT) != 0;
+    }
+    
+    /**
+     * Checks if blocks have a key index
+     * @return True if every block has a sorted table of key hashes after its string table
+     */
+    public boolean isIndexed() {
+        return (flags & FLAG_INDEX) != 0;
+    }
+    
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof SEFormat && ((SEFormat) other).flags == flags && ((SEFormat) other).dictionary == dictionary;
+    }
+    
+    @Override
+    public int hashCode() {
+        return flags * 31 + System.identityHashCode(dictionary);
+    }
+    
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2017 DropDemBits <r3usrlnd@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package gio.ddb.serial2;
+
+import gio.ddb.serial2.types.PrimativeTypes.Primatives;
+
+/**
+ * List of integers, backed by a int array
+ * @author DropDemBits <r3usrlnd@gmail.com>
+ */
+public class SEIntList extends SETypedList<int[]> {
+
+    /**
+     * Creates a new, empty SEIntList
+     */
+    public SEIntList() {
+        super(Primatives.INT);
+    }
+    
+    /**
+     * Creates a new SEIntList holding a copy of an array
+     * @param src The values to copy
+     */
+    public SEIntList(int[] src) {
+        this();
+        addAll(src);
+    }
+    
+    /**
+     * Creates a new SEIntList from a byte array, reading it in place
+     * @param src The array to parse
+     * @param offset The offset of the serialized list in the array
+     * @param length The length of the serialized list
+     */
+    public SEIntList(byte[] src, int offset, int length) {
+        this(SETypedList.parserAt(src, offset), length);
+    }
+    
+    /**
+     * Creates a new SEIntList from a parser, reading it in place
+     * The index of the parser is left in an undefined place
+     * @param src The parser containing the list, with the index pointing at the start of it
+     * @param length The length of the serialized list
+     */
+    SEIntList(ByteArrayParser src, int length) {
+        super(Primatives.INT, src, length);
+    }
+    
+    /**
+     * Gets the integer at the specified index
+     * @param index The index to get the integer from
+     * @return The integer, or zero if the index is out of bounds
+     */
+    public int get(int index) {
+        if(index < 0 || index >= length) return 0;
+        return values[index];
+    }
+    
+    /**
+     * Copies a range of integers into an array
+     * @param index The index of the first integer to copy
+     * @param dest The array to copy into
+     * @param offset The offset into dest to start copying to
+     * @param count The amount of integers to copy
+     */
+    public void get(int index, int[] dest, int offset, int count) {
+        getRange(index, dest, offset, count);
+    }
+    
+    /**
+     * Sets the integer at the specified index
+     * Will append if the index is the length of the list, and will not do anything if the index is past it
+     * @param index The index to set the integer at
+     * @param value The integer to set
+     */
+    public void set(int index, int value) {
+        if(!reserve(index, 1)) return;
+        values[index] = value;
+        written(index + 1);
+    }
+    
+    /**
+     * Sets a range of integers, extending the list if the range goes past the end
+     * Will not do anything if the index is past the end of the list
+     * @param index The index to start setting integers at
+     * @param src The array to copy from
+     * @param offset The offset into src to start copying from
+     * @param count The amount of integers to copy
+     */
+    public void set(int index, int[] src, int offset, int count) {
+        setRange(index, src, offset, count);
+    }
+    
+    /**
+     * Appends a integer
+     * @param value The integer to append
+     */
+    public void add(int value) {
+        set(length, value);
+    }
+    
+    /**
+     * Appends all of the integers in an array
+     * @param src The integers to append
+     */
+    public void addAll(int[] src) {
+        addAll(src, 0, src.length);
+    }
+    
+    /**
+     * Appends a range of integers from an array
+     * @param src The array to copy from
+     * @param offset The offset into src to start copying from
+     * @param count The amount of integers to copy
+     */
+    public void addAll(int[] src, int offset, int count) {
+        set(length, src, offset, count);
+    }
+    
+    /**
+     * Copies the integers into a new array
+     * @return A new array containing all of the integers
+     */
+    public int[] toArray() {
+        return copyValues();
+    }
+    
+    @Override
+    protected int[] newArray(int capacity) {
+        return new int[capacity];
+    }
+    
+    @Override
+    protected void readValues(ByteArrayParser src, int count) {
+        src.getInts(values, 0, count);
+    }
+    
+    @Override
+    protected void writeValues(ByteArrayParser dest) {
+        dest.addInts(values, 0, length);
+    }
+    
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2017 DropDemBits <r3usrlnd@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package gio.ddb.serial2;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Shared table of keys, so that blocks can refer to keys by small integer IDs instead of names
+ * The dictionary is immutable, and must be the same (same keys, same order) on both ends.
+ * It can be agreed on up front, or sent once in-band with toList() before the documents using it.
+ * @author DropDemBits <r3usrlnd@gmail.com>
+ */
+public final class SEKeyDictionary {
+    
+    /* Keys by ID */
+    private final String[] keys;
+    /* IDs by key */
+    private final Map<String, Integer> ids;
+    
+    /**
+     * Creates a new SEKeyDictionary
+     * Keys are given IDs in order, and duplicates are ignored
+     * @param keys The keys in the dictionary
+     */
+    public SEKeyDictionary(String... keys) {
+        this.ids = new HashMap<>();
+        String[] unique = new String[keys.length];
+        int count = 0;
+        for(String key : keys) {
+            if(key == null || key.isEmpty() || ids.containsKey(key)) continue;
+            ids.put(key, count);
+            unique[count++] = key;
+        }
+        
+        this.keys = Arrays.copyOf(unique, count);
+    }
+    
+    /**
+     * Creates a new SEKeyDictionary
+     * @param keys The keys in the dictionary, in ID order
+     */
+    public SEKeyDictionary(Collection<String> keys) {
+        this(keys.toArray(new String[0]));
+    }
+    
+    /**
+     * Creates a new SEKeyDictionary from one sent in-band
+     * @param list The list of keys, from toList()
+     */
+    public SEKeyDictionary(SEList list) {
+        this(listKeys(list));
+    }
+    
+    private static String[] listKeys(SEList list) {
+        String[] keys = new String[list.valueMap.size()];
+        for(int i = 0; i < keys.length; i++) keys[i] = list.getString(i);
+        return keys;
+    }
+    
+    /**
+     * Creates a list of the keys, for sending the dictionary in-band
+     * @return The keys, in ID order
+     */
+    public SEList toList() {
+        SEList list = new SEList();
+        for(int id = 0; id < keys.length; id++) list.setValue(id, keys[id]);
+        return list;
+    }
+    
+    /**
+     * Gets the ID of a key
+     * @param key The key to look for
+     * @return The ID of the key, or -1 if the key isn't in the dictionary
+     */
+    public int getId(String key) {
+        Integer id = ids.get(key);
+        return id == null ? -1 : id;
+    }
+    
+    /**
+     * Gets the key with an ID
+     * @param id The ID of the key
+     * @return The key, or an empty string if there is no key with that ID
+     */
+    public String getKey(int id) {
+        if(id < 0 || id >= keys.length) return "";
+        return keys[id];
+    }
+    
+    /**
+     * Gets the amount of keys in the dictionary
+     * @return The amount of keys
+     */
+    public int size() {
+        return keys.length;
+    }
+    
+}
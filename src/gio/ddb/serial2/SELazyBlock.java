@@ -0,0 +1,325 @@
+/*
+ * Copyright (C) 2017 DropDemBits <r3usrlnd@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package gio.ddb.serial2;
+
+import gio.ddb.serial2.compression.Codec;
+import gio.ddb.serial2.types.PrimativeTypes;
+import gio.ddb.serial2.types.PrimativeTypes.Primatives;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Block that decodes its values on demand from the serialized version
+ * Values are only deserialized when they are first accessed, and nested blocks are lazy as well.
+ * The whole block is deserialized the first time it is modified.
+ * Blocks in other formats stay lazy until their size in the default format is needed, since it isn't known until they are deserialized.
+ * Compact blocks are deserialized straight away.
+ * Names are looked up through the key index if the block has one, without indexing the other entries.
+ * @author DropDemBits <r3usrlnd@gmail.com>
+ */
+public class SELazyBlock extends SEBlock {
+
+    /* The serialized block. Released once the block is fully deserialized */
+    private byte[] src;
+    private final int base;
+    private final int length;
+    /**
+     * Whether the serialized block has a parent (i.e. no header & footer)
+     */
+    private boolean srcHasParent;
+    /**
+     * The wire format of the serialized block
+     */
+    private SEFormat srcFormat = SEFormat.DEFAULT;
+    /**
+     * Index of the entries of the serialized block, or null if it is invalid
+     */
+    private SEEntryIndex entries;
+    /**
+     * Values that have been deserialized so far, by the offset of their serialized version
+     */
+    private Map<Integer, Serializable> values = new HashMap<>();
+    /**
+     * Whether the block is being fully deserialized
+     */
+    private boolean materializing;
+
+    /**
+     * Creates a new SELazyBlock from a serialized version
+     * @param src The array to get the data from
+     */
+    public SELazyBlock(byte[] src) {
+        this(src, 0, src.length);
+    }
+
+    /**
+     * Creates a new SELazyBlock from a serialized version
+     * The array is kept and must not be modified while the block is still lazy
+     * @param src The array to get the data from
+     * @param offset The offset of the serialized block in the array
+     * @param length The length of the serialized block
+     */
+    public SELazyBlock(byte[] src, int offset, int length) {
+        this(src, offset, length, null);
+    }
+    
+    /**
+     * Creates a new SELazyBlock from a serialized version that may use a shared key dictionary
+     * @param src The array to get the data from
+     * @param dictionary The dictionary the block was serialized with, or null if there is none
+     */
+    public SELazyBlock(byte[] src, SEKeyDictionary dictionary) {
+        this(src, 0, src.length, dictionary);
+    }
+    
+    /**
+     * Creates a new SELazyBlock from a serialized version that may use a shared key dictionary
+     * The array is kept and must not be modified while the block is still lazy
+     * @param src The array to get the data from
+     * @param offset The offset of the serialized block in the array
+     * @param length The length of the serialized block
+     * @param dictionary The dictionary the block was serialized with, or null if there is none
+     */
+    public SELazyBlock(byte[] src, int offset, int length, SEKeyDictionary dictionary) {
+        this(SEBlock.decompress(src, offset, length), src, offset, length, SEFormat.DEFAULT.withDictionary(dictionary));
+    }
+    
+    /**
+     * Creates a new SELazyBlock from a serialized version, which may have been decompressed
+     * @param raw The decompressed block, or null if the block wasn't compressed
+     * @param outer The format of the enclosing block, used if the block has no root header
+     */
+    private SELazyBlock(byte[] raw, byte[] src, int offset, int length, SEFormat outer) {
+        if(raw != null) {
+            setCodec(Codec.forId(SEBlock.readCodecId(src, offset, length)));
+            src = raw;
+            offset = 0;
+            length = raw.length;
+        }
+        
+        this.src = src;
+        this.base = offset;
+        this.length = length;
+
+        ByteArrayParser parser = new ByteArrayParser(src);
+        parser.setFormat(outer);
+        parser.index = offset;
+        if(!SEBlock.readHeader(parser, length)) return;
+
+        srcHasParent = hasParent = parser.index == offset;
+        srcFormat = parser.getFormat();
+        if(!srcHasParent) setFormat(srcFormat);
+        if(parser.getShort() != getType()) return;
+
+        int dataEnd = offset + length - (srcHasParent ? 0 : FILE_FOOTER.length);
+        entries = new SEEntryIndex(ByteBuffer.wrap(src).order(ByteOrder.LITTLE_ENDIAN), srcFormat, offset, parser.index, dataEnd);
+        if(!entries.isValid()) entries = null;
+        
+        if(entries != null && srcFormat.isCompact()) materializeAll();
+    }
+
+    /**
+     * Checks if the block is still backed by the serialized version
+     * @return True if no modifications have been made to the block
+     */
+    public boolean isLazy() {
+        return src != null;
+    }
+
+    /**
+     * Finds the entry mapped to a name
+     * @param name The name to look for
+     * @return The index of the entry, or -1 if none was found
+     */
+    private int indexOf(String name) {
+        return entries == null ? -1 : entries.indexOf(name);
+    }
+
+    /**
+     * Gets the primitive type of an entry
+     * @param entry The index of the entry
+     * @return The primitive type, or null if the entry isn't a known primitive
+     */
+    private Primatives getPrimative(int entry) {
+        int offset = entries.getValueOffset(entry);
+        short type = (short) (Byte.toUnsignedInt(src[offset]) | src[offset+1] << 8);
+        if((type & 0xFF) != SEType.PRIMATIVE.value()) return null;
+        int primative = type >> 8;
+        return primative < 0 || primative >= Primatives.values().length ? null : Primatives.values()[primative];
+    }
+
+    /**
+     * Deserializes an entry, if it hasn't been already
+     * @param entry The index of the entry
+     * @return The deserialized value, or null if the type is unknown
+     */
+    private Serializable materialize(int entry) {
+        int offset = entries.getValueOffset(entry);
+        Serializable value = values.get(offset);
+        if(value != null) return value;
+
+        ByteArrayParser parser = new ByteArrayParser(src);
+        parser.setFormat(srcFormat);
+        parser.index = offset;
+
+        if(parser.getShort() == SEType.BLOCK.value())
+            value = new SELazyBlock(null, src, offset, entries.getValueSize(entry), srcFormat);
+        else
+            value = SEBase.deserializeValue(parser, entries.getValueSize(entry));
+        if(value == null) return null;
+
+        //Changes to the value have to reach this block, since they make the serialized version out of date
+        value = SEBase.adopt(this, value);
+        values.put(offset, value);
+        return value;
+    }
+
+    /**
+     * Deserializes all of the remaining entries, and releases the serialized version
+     */
+    private void materializeAll() {
+        if(src == null) return;
+        int entryCount = entries == null ? 0 : entries.size();
+
+        //Parent already has the lazy size, so only pass on the difference at the end.
+        //Blocks in other formats never hand out a lazy size, since getSize() deserializes them first,
+        //so the parent is only told that the block changed
+        SEBase container = parent;
+        int lazySize = container != null && srcFormat.isDefault() ? getSize() : 0;
+        parent = null;
+        materializing = true;
+        ByteArrayParser parser = new ByteArrayParser(src);
+        parser.setFormat(srcFormat);
+
+        for(int i = 0; i < entryCount; i++) {
+            String key = entries.getName(i);
+            if(key.isEmpty()) continue;
+
+            Primatives type = getPrimative(i);
+            if(type != null) {
+                super.putBits(key, type, PrimativeTypes.readBits(parser, entries.getValueOffset(i) + Short.BYTES, type));
+            } else {
+                //Values handed out already belong to this block, so they are moved into the slots rather than copied
+                Serializable value = materialize(i);
+                SEBase.orphan(this, value);
+                if(value != null) super.putValue(key, value);
+            }
+        }
+
+        src = null;
+        materializing = false;
+        parent = container;
+        if(parent != null) parent.sizeChanged(srcFormat.isDefault() ? getSize() - lazySize : 0);
+        entries = null;
+        values = null;
+    }
+
+    @Override
+    protected void putValue(String name, Serializable value) {
+        materializeAll();
+        super.putValue(name, value);
+    }
+
+    @Override
+    protected void putBits(String name, Primatives type, long bits) {
+        materializeAll();
+        super.putBits(name, type, bits);
+    }
+
+    @Override
+    protected void sizeChanged(int delta) {
+        //A deserialized value was modified, so the serialized version can't be used anymore
+        if(src != null && !materializing) {
+            materializeAll();
+            return;
+        }
+        super.sizeChanged(delta);
+    }
+
+    @Override
+    protected void removeValue(String name) {
+        materializeAll();
+        super.removeValue(name);
+    }
+
+    @Override
+    public List<String> getNames() {
+        materializeAll();
+        return super.getNames();
+    }
+
+    @Override
+    protected long getBits(String name, Primatives type) {
+        if(src == null) return super.getBits(name, type);
+
+        //Read in place, without deserializing the entry
+        int entry = indexOf(name);
+        if(entry < 0 || getPrimative(entry) != type) return 0;
+        return PrimativeTypes.readBits(src, entries.getValueOffset(entry) + Short.BYTES, type);
+    }
+
+    @Override
+    protected Serializable getValue(String name) {
+        if(src == null) return super.getValue(name);
+
+        int entry = indexOf(name);
+        return entry < 0 ? null : materialize(entry);
+    }
+
+    @Override
+    public int getSize() {
+        if(src == null) return super.getSize();
+        if(!srcFormat.isDefault()) {
+            materializeAll();
+            return super.getSize();
+        }
+
+        return getSrcSize();
+    }
+
+    /**
+     * Gets the size of the serialized version, adjusted for whether the block has a parent
+     */
+    private int getSrcSize() {
+        int frameSize = length - (srcHasParent ? 0 : SEBase.HEADER_SIZE + FILE_FOOTER.length);
+        return frameSize + (hasParent ? 0 : SEBase.HEADER_SIZE + FILE_FOOTER.length);
+    }
+
+    @Override
+    public int getSize(SEFormat format) {
+        if(src != null && format.equals(srcFormat)) return getSrcSize();
+        materializeAll();
+        return super.getSize(format);
+    }
+
+    @Override
+    protected void writeFrame(ByteArrayParser dest, int headerSize) {
+        //Unmodified, so the serialized version can be copied as is
+        if(src != null && entries != null && hasParent == srcHasParent && srcFormat.equals(dest.getFormat())) {
+            int rootSize = srcHasParent ? 0 : SEBase.HEADER_SIZE + FILE_FOOTER.length;
+            dest.addBytes(src, base + (srcHasParent ? 0 : SEBase.HEADER_SIZE), length - rootSize);
+            return;
+        }
+
+        materializeAll();
+        super.writeFrame(dest, headerSize);
+    }
+
+}
@@ -18,9 +18,7 @@ package gio.ddb.serial2;
 
 import gio.ddb.serial2.types.PrimativeTypes;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.function.Consumer;
 
 /**
  * List for iterative accesses 
@@ -29,9 +27,15 @@ import java.util.function.Consumer;
 public class SEList extends SEBase {
 
     /**
-     * The current calculated size. Changes with each call to recalculateSize()
+     * The current calculated size
+     * Kept up to date as values are added, replaced or resized
      */
-    private int calcSize = 0;
+    private int calcSize = SEBase.BASE_SIZE + Integer.BYTES;
+    /**
+     * Size in the last non-default format asked for, or null if it needs to be recalculated
+     */
+    private SEFormat sizeFormat;
+    private int formatSize;
     /**
      * The array of values
      */
@@ -49,8 +53,31 @@ public class SEList extends SEBase {
      * @param src The byte array to deserialize a SEList from
      */
     SEList(byte[] src) {
+        this(src, 0, src.length);
+    }
+    
+    /**
+     * Creates a new SEList from a byte array, reading it in place
+     * @param src The byte array to deserialize a SEList from
+     * @param offset The offset of the serialized list in the array
+     * @param length The length of the serialized list
+     */
+    public SEList(byte[] src, int offset, int length) {
+        valueMap = new ArrayList<>();
+        ByteArrayParser parser = new ByteArrayParser(src);
+        parser.index = offset;
+        deserialize(parser, length);
+    }
+    
+    /**
+     * Creates a new SEList from a parser, reading it in place
+     * The index of the parser is left in an undefined place
+     * @param src The parser containing the list, with the index pointing at the start of it
+     * @param length The length of the serialized list
+     */
+    SEList(ByteArrayParser src, int length) {
         valueMap = new ArrayList<>();
-        deserialize(src);
+        deserialize(src, length);
     }
     
     /**
@@ -60,9 +87,7 @@ public class SEList extends SEBase {
      */
 	public void setValue(Integer index, boolean value) {
         if(index == null || index < 0) return;
-		if(valueMap.get(index) == null) valueMap.add(index, new PrimativeTypes.BooleanValue(value));
-        else valueMap.set(index, new PrimativeTypes.BooleanValue(value));
-		recalculateSize();
+		putValue(index, new PrimativeTypes.BooleanValue(value));
 	}
 	
     /**
@@ -72,9 +97,7 @@ public class SEList extends SEBase {
      */
 	public void setValue(Integer index, byte value) {
         if(index == null || index < 0) return;
-		if(valueMap.get(index) == null) valueMap.add(index, new PrimativeTypes.ByteValue(value));
-        else valueMap.set(index, new PrimativeTypes.ByteValue(value));
-		recalculateSize();
+		putValue(index, new PrimativeTypes.ByteValue(value));
 	}
 	
     /**
@@ -84,9 +107,7 @@ public class SEList extends SEBase {
      */
 	public void setValue(Integer index, short value) {
         if(index == null || index < 0) return;
-		if(valueMap.get(index) == null) valueMap.add(index, new PrimativeTypes.ShortValue(value));
-        else valueMap.set(index, new PrimativeTypes.ShortValue(value));
-		recalculateSize();
+		putValue(index, new PrimativeTypes.ShortValue(value));
 	}
 	
     /**
@@ -96,9 +117,7 @@ public class SEList extends SEBase {
      */
 	public void setValue(Integer index, char value) {
         if(index == null || index < 0) return;
-		if(valueMap.get(index) == null) valueMap.add(index, new PrimativeTypes.CharValue(value));
-        else valueMap.set(index, new PrimativeTypes.CharValue(value));
-		recalculateSize();
+		putValue(index, new PrimativeTypes.CharValue(value));
 	}
 	
     /**
@@ -108,9 +127,7 @@ public class SEList extends SEBase {
      */
 	public void setValue(Integer index, int value) {
         if(index == null || index < 0) return;
-		if(valueMap.get(index) == null) valueMap.add(index, new PrimativeTypes.IntValue(value));
-        else valueMap.set(index, new PrimativeTypes.IntValue(value));
-		recalculateSize();
+		putValue(index, new PrimativeTypes.IntValue(value));
 	}
 	
     /**
@@ -120,9 +137,7 @@ public class SEList extends SEBase {
      */
 	public void setValue(Integer index, long value) {
         if(index == null || index < 0) return;
-		if(valueMap.get(index) == null) valueMap.add(index, new PrimativeTypes.LongValue(value));
-        else valueMap.set(index, new PrimativeTypes.LongValue(value));
-		recalculateSize();
+		putValue(index, new PrimativeTypes.LongValue(value));
 	}
 	
     /**
@@ -132,9 +147,7 @@ public class SEList extends SEBase {
      */
 	public void setValue(Integer index, float value) {
         if(index == null || index < 0) return;
-		if(valueMap.get(index) == null) valueMap.add(index, new PrimativeTypes.FloatValue(value));
-        else valueMap.set(index, new PrimativeTypes.FloatValue(value));
-		recalculateSize();
+		putValue(index, new PrimativeTypes.FloatValue(value));
 	}
 	
     /**
@@ -144,9 +157,7 @@ public class SEList extends SEBase {
      */
 	public void setValue(Integer index, double value) {
         if(index == null || index < 0) return;
-		if(valueMap.get(index) == null) valueMap.add(index, new PrimativeTypes.DoubleValue(value));
-        else valueMap.set(index, new PrimativeTypes.DoubleValue(value));
-		recalculateSize();
+		putValue(index, new PrimativeTypes.DoubleValue(value));
 	}
     
     /**
@@ -156,46 +167,72 @@ public class SEList extends SEBase {
      */
     public void setValue(Integer index, String value) {
         if(index == null || index < 0) return;
-		if(valueMap.get(index) == null) valueMap.add(index, new SEString(value));
-        else valueMap.set(index, new SEString(value));
-		recalculateSize();
+		putValue(index, new SEString(value));
     }
 	
     /**
      * Sets an SEBlock at the current index
+     * A block that is already in a block or list is copied, and the copy is set instead.
+     * Later changes to the original then don't reach this list
      * @param index The index to set the value to
      * @param block The block to set
      */
     public void setValue(Integer index, SEBlock block) {
 		if(index == null || index < 0) return;
 		block.hasParent = true;
-		if(valueMap.get(index) == null) valueMap.add(index, block);
-        else valueMap.set(index, block);
+		putValue(index, block);
 	}
     
     /**
      * Sets an SEList at the current index
-     * Will not do anything if adding a list that is equal to the current list
+     * Will not do anything if adding a list that is equal to the current list.
+     * A list that is already in a block or list is copied, and the copy is set instead.
+     * Later changes to the original then don't reach this list
      * @param index The index to set the value to
      * @param list The list to set
      */
     public void setValue(Integer index, SEList list) {
         if(list == this || index == null || index < 0) return;
-		if(valueMap.get(index) == null) valueMap.add(index, list);
-        else valueMap.set(index, list);
+		putValue(index, list);
 	}
     
     /**
      * Sets a generic Serializable object at the current index
+     * Blocks, lists and strings that are already in a block or list are copied, and the copy is set instead.
+     * Later changes to the original then don't reach this list
      * @param index The index to set the value to
      * @param value The value to set
      */
     public void setValue(Integer index, Serializable value) {
         if(value == null || index == null || index < 0) return;
-        if(value.getClass() == SEBlock.class) setValue(index, (SEBlock)value);
-        if(valueMap.get(index) == null) valueMap.add(index, value);
-        else valueMap.set(index, value);
-		recalculateSize();
+        if(value == this) return;
+        if(value instanceof SEBlock) ((SEBlock)value).hasParent = true;
+		putValue(index, value);
+    }
+    
+    /**
+     * Sets a value at an index, replacing the value that was there
+     * Will not do anything if the index is past the end of the list
+     * @param index The index to set the value to, or the length of the list to append it
+     * @param value The value to set
+     */
+    protected void putValue(int index, Serializable value) {
+        if(index > valueMap.size()) return;
+        //Released first, so setting the same value again doesn't copy it
+        if(index < valueMap.size()) SEBase.orphan(this, valueMap.get(index));
+        value = SEBase.adopt(this, value);
+        int delta = value.getSize();
+        
+        if(index == valueMap.size()) {
+            valueMap.add(value);
+            delta += Short.BYTES;
+        } else {
+            Serializable old = valueMap.set(index, value);
+            if(old != null) delta -= old.getSize();
+            else delta += Short.BYTES - 1;
+        }
+        
+        sizeChanged(delta);
     }
 	
     /**
@@ -204,7 +241,7 @@ public class SEList extends SEBase {
      * @return A block, or null if nothing was at the index
      */
 	public SEBlock getBlock(Integer index) {
-		if(index == null || index < 0 || index > valueMap.size() || valueMap.get(index) == null || valueMap.get(index).getClass() != SEBlock.class)
+		if(index == null || index < 0 || index >= valueMap.size() || !(valueMap.get(index) instanceof SEBlock))
 			return null;
 		else
 			return (SEBlock) valueMap.get(index);
@@ -216,7 +253,7 @@ public class SEList extends SEBase {
      * @return A list, or null if nothing was at the index
      */
     public SEList getList(Integer index) {
-		if(index == null || index < 0 || index > valueMap.size() || valueMap.get(index) == null || valueMap.get(index).getClass() != SEList.class)
+		if(index == null || index < 0 || index >= valueMap.size() || !(valueMap.get(index) instanceof SEList))
 			return null;
 		else
 			return (SEList) valueMap.get(index);
@@ -228,7 +265,7 @@ public class SEList extends SEBase {
      * @return A boolean, or false if nothing was at the index
      */
 	public boolean getBoolean(Integer index) {
-		if(index == null || index < 0 || index > valueMap.size() || valueMap.get(index) == null || valueMap.get(index).getClass() != PrimativeTypes.BooleanValue.class)
+		if(index == null || index < 0 || index >= valueMap.size() || !(valueMap.get(index) instanceof PrimativeTypes.BooleanValue))
 			return false;
 		else
 			return ((PrimativeTypes.BooleanValue) valueMap.get(index)).value;
@@ -240,7 +277,7 @@ public class SEList extends SEBase {
      * @return A byte, or zero if nothing was at the index
      */
 	public byte getByte(Integer index) {
-		if(index == null || index < 0 || index > valueMap.size() || valueMap.get(index) == null || valueMap.get(index).getClass() != PrimativeTypes.ByteValue.class)
+		if(index == null || index < 0 || index >= valueMap.size() || !(valueMap.get(index) instanceof PrimativeTypes.ByteValue))
 			return (byte)0;
 		else
 			return ((PrimativeTypes.ByteValue) valueMap.get(index)).value;
@@ -252,7 +289,7 @@ public class SEList extends SEBase {
      * @return A char, or '\0' (NULL) if nothing was at the index
      */
 	public char getChar(Integer index) {
-		if(index == null || index < 0 || index > valueMap.size() || valueMap.get(index) == null || valueMap.get(index).getClass() != PrimativeTypes.CharValue.class)
+		if(index == null || index < 0 || index >= valueMap.size() || !(valueMap.get(index) instanceof PrimativeTypes.CharValue))
 			return '\0';
 		else
 			return ((PrimativeTypes.CharValue) valueMap.get(index)).value;
@@ -264,7 +301,7 @@ public class SEList extends SEBase {
      * @return A short, or zero if nothing was at the index
      */
 	public short getShort(Integer index) {
-		if(index == null || index < 0 || index > valueMap.size() || valueMap.get(index) == null || valueMap.get(index).getClass() != PrimativeTypes.ShortValue.class)
+		if(index == null || index < 0 || index >= valueMap.size() || !(valueMap.get(index) instanceof PrimativeTypes.ShortValue))
 			return (short)0;
 		else
 			return ((PrimativeTypes.ShortValue) valueMap.get(index)).value;
@@ -276,7 +313,7 @@ public class SEList extends SEBase {
      * @return An integer, or zero if nothing was at the index
      */
 	public int getInt(Integer index) {
-		if(index == null || index < 0 || index > valueMap.size() || valueMap.get(index) == null || valueMap.get(index).getClass() != PrimativeTypes.IntValue.class)
+		if(index == null || index < 0 || index >= valueMap.size() || !(valueMap.get(index) instanceof PrimativeTypes.IntValue))
 			return 0;
 		else
 			return ((PrimativeTypes.IntValue) valueMap.get(index)).value;
@@ -288,7 +325,7 @@ public class SEList extends SEBase {
      * @return A long, or zero if nothing was at the index
      */
 	public long getLong(Integer index) {
-		if(index == null || index < 0 || index > valueMap.size() || valueMap.get(index) == null || valueMap.get(index).getClass() != PrimativeTypes.LongValue.class)
+		if(index == null || index < 0 || index >= valueMap.size() || !(valueMap.get(index) instanceof PrimativeTypes.LongValue))
 			return 0L;
 		else
 			return ((PrimativeTypes.LongValue) valueMap.get(index)).value;
@@ -300,7 +337,7 @@ public class SEList extends SEBase {
      * @return A float, or zero if nothing was at the index
      */
 	public float getFloat(Integer index) {
-		if(index == null || index < 0 || index > valueMap.size() || valueMap.get(index) == null || valueMap.get(index).getClass() != PrimativeTypes.FloatValue.class)
+		if(index == null || index < 0 || index >= valueMap.size() || !(valueMap.get(index) instanceof PrimativeTypes.FloatValue))
 			return 0f;
 		else
 			return ((PrimativeTypes.FloatValue) valueMap.get(index)).value;
@@ -312,7 +349,7 @@ public class SEList extends SEBase {
      * @return A double, or zero if nothing was at the index
      */
 	public double getDouble(Integer index) {
-		if(index == null || index < 0 || index > valueMap.size() || valueMap.get(index) == null || valueMap.get(index).getClass() != PrimativeTypes.DoubleValue.class)
+		if(index == null || index < 0 || index >= valueMap.size() || !(valueMap.get(index) instanceof PrimativeTypes.DoubleValue))
 			return 0d;
 		else
 			return ((PrimativeTypes.DoubleValue) valueMap.get(index)).value;
@@ -324,10 +361,58 @@ public class SEList extends SEBase {
      * @return A string, or an empty string if nothing was at the index
      */
     public String getString(Integer index) {
-		if(index == null || index < 0 || index > valueMap.size() || valueMap.get(index) == null || valueMap.get(index).getClass() != SEString.class)
+		if(index == null || index < 0 || index >= valueMap.size() || !(valueMap.get(index) instanceof SEString))
 			return "";
 		else
-			return ((SEString) valueMap.get(index)).value;
+			return ((SEString) valueMap.get(index)).getValue();
+	}
+    
+    /**
+     * Gets the byte list at the specified index
+     * @param index The index to get the byte list from
+     * @return A byte list, or null if nothing was at the index
+     */
+    public SEByteList getByteList(Integer index) {
+		if(index == null || index < 0 || index >= valueMap.size() || !(valueMap.get(index) instanceof SEByteList))
+			return null;
+		else
+			return (SEByteList) valueMap.get(index);
+	}
+    
+    /**
+     * Gets the integer list at the specified index
+     * @param index The index to get the integer list from
+     * @return An integer list, or null if nothing was at the index
+     */
+    public SEIntList getIntList(Integer index) {
+		if(index == null || index < 0 || index >= valueMap.size() || !(valueMap.get(index) instanceof SEIntList))
+			return null;
+		else
+			return (SEIntList) valueMap.get(index);
+	}
+    
+    /**
+     * Gets the long list at the specified index
+     * @param index The index to get the long list from
+     * @return A long list, or null if nothing was at the index
+     */
+    public SELongList getLongList(Integer index) {
+		if(index == null || index < 0 || index >= valueMap.size() || !(valueMap.get(index) instanceof SELongList))
+			return null;
+		else
+			return (SELongList) valueMap.get(index);
+	}
+    
+    /**
+     * Gets the double list at the specified index
+     * @param index The index to get the double list from
+     * @return A double list, or null if nothing was at the index
+     */
+    public SEDoubleList getDoubleList(Integer index) {
+		if(index == null || index < 0 || index >= valueMap.size() || !(valueMap.get(index) instanceof SEDoubleList))
+			return null;
+		else
+			return (SEDoubleList) valueMap.get(index);
 	}
     
     @Override
@@ -336,107 +421,139 @@ public class SEList extends SEBase {
     }
     
     /**
-     * Recalculates calcSize
+     * Recalculates calcSize from scratch
      */
     protected void recalculateSize() {
+        int oldSize = calcSize;
         calcSize = SEBase.BASE_SIZE + Integer.BYTES;
-		valueMap.forEach(new Consumer<Serializable>() {
-            @Override
-			public void accept(Serializable value) {
-				calcSize += value.getSize() + Short.BYTES;
-			};
-		});
+        sizeFormat = null;
+        for(Serializable value : valueMap) {
+            calcSize += value == null ? 1 : value.getSize() + Short.BYTES;
+        }
+        super.sizeChanged(calcSize - oldSize);
+    }
+    
+    @Override
+    protected void sizeChanged(int delta) {
+        //Other formats' sizes can change even if the default size doesn't
+        calcSize += delta;
+        sizeFormat = null;
+        super.sizeChanged(delta);
+    }
+    
+    @Override
+    protected boolean isCacheable() {
+        return true;
     }
     
     @Override
     public int getSize() {
-        if(calcSize == 0) recalculateSize();
         return calcSize;
     }
+    
+    @Override
+    public int getSize(SEFormat format) {
+        if(format.isDefault()) return getSize();
+        if(format.equals(sizeFormat)) return formatSize;
+        
+        if(format.isCompact()) {
+            int contentSize = Short.BYTES + ByteArrayParser.varIntSize(valueMap.size());
+            for(int i = 0; i < valueMap.size(); i++) {
+                Serializable value = valueMap.get(i);
+                contentSize += ByteArrayParser.varIntSize(i) + (value == null ? 1 : value.getSize(format));
+            }
+            formatSize = SEBase.getCompactFrameSize(contentSize);
+        } else {
+            formatSize = SEBase.BASE_SIZE + Integer.BYTES;
+            for(Serializable value : valueMap) {
+                formatSize += value == null ? 1 : value.getSize(format) + Short.BYTES;
+            }
+        }
+        sizeFormat = format;
+        return formatSize;
+    }
 
     @Override
     public byte[] getSerialized() {
+        byte[] cached = getCached(SEFormat.DEFAULT);
+        if(cached != null) return cached.clone();
+        
         ByteArrayParser dest = new ByteArrayParser(getSize());
+        writeTo(dest);
+        return keepCached(dest.toBytes(), SEFormat.DEFAULT);
+    }
+
+    @Override
+    public void writeTo(ByteArrayParser dest) {
         //Type
         dest.addShort(getType());
         
+        boolean compact = dest.getFormat().isCompact();
+        
         //Size
-        dest.addInt(getSize());
+        SEBase.writeFrameSize(dest, getSize(dest.getFormat()));
         
         //Length
-        dest.addInt(valueMap.size());
+        if(compact) dest.addVarInt(valueMap.size());
+        else dest.addInt(valueMap.size());
         
         for(int i = 0; i < valueMap.size(); i++) {
+            if(compact) {
+                //Index, even for empty values
+                dest.addVarInt(i);
+            }
+            
             if(valueMap.get(i) == null) {
                 dest.addByte((byte)0);
                 continue;
             }
-            byte[] bytes = ((Serializable) valueMap.get(i)).getSerialized();
             
             //Index (Replaces name)
-            dest.addShort((short)i);
+            if(!compact) dest.addShort((short)i);
             
-            for(int j = 0; j < bytes.length; j++)
-                dest.addByte(bytes[j]);
+            SEBase.writeValue(dest, valueMap.get(i));
         }
-        
-        return dest.toBytes();
     }
     
-    private void deserialize(byte[] barray) {
-        ByteArrayParser src = new ByteArrayParser(barray);
+    /**
+     * Deserializes an SEList in place
+     * @param src The parser containing the list, with the index pointing at the start of it
+     * @param length The length of the serialized list
+     */
+    private void deserialize(ByteArrayParser src, int length) {
+        int end = src.index + length;
+        
+        boolean compact = src.getFormat().isCompact();
         
         if(src.getShort() != SEType.LIST.value()) return;
         src.skip(2);
         
-        //int size = src.getInt();
-        src.skip(4);
+        //Size
+        SEBase.readField(src);
         
-        int length = src.getInt();
-        src.skip(4);
+        int count = SEBase.readField(src);
         
-        for(int i = 0; i < length; i++) {
+        for(int i = 0; i < count && src.index < end; i++) {
             //Don't bother with index
-            src.skip(2);
+            if(compact) src.readVarInt();
+            else src.skip(2);
+            if(src.index >= end) break;
             
             if(src.getByte() == 0) {
                 src.skip(1);
                 continue;
             }
             
-            //Do thing
-            short type = src.getShort();
-            src.skip(2);
-            int serialSize = src.getInt();
-            src.skip(-2);
+            //Malformed? Just die anyways
+            if(src.getShort() == SEType.ROOT_BLOCK.value()) break;
             
-            if(type == SEType.ROOT_BLOCK.value()) {
-                //Malformed? Just die anyways
-                return;
-            } else if(type == SEType.BLOCK.value()) {
-                setValue(i, new SEBlock(Arrays.copyOfRange(src.toBytes(), src.index, src.index+serialSize)));
-                src.skip(serialSize);
-            } else if(type == SEType.LIST.value()) {
-                setValue(i, new SEList(Arrays.copyOfRange(src.toBytes(), src.index, src.index+serialSize)));
-                src.skip(serialSize);
-            } else if((type & 0xFF) == SEType.PRIMATIVE.value()) {
-                switch(PrimativeTypes.Primatives.values()[type >> 8]) {
-                    case BOOLEAN: setValue(i, new PrimativeTypes.BooleanValue(Arrays.copyOfRange(src.toBytes(), src.index, src.index+2+Byte.BYTES))); src.skip(Byte.BYTES+2); break;
-                    case BYTE: setValue(i, new PrimativeTypes.ByteValue(Arrays.copyOfRange(src.toBytes(), src.index, src.index+2+Byte.BYTES))); src.skip(Byte.BYTES+2); break;
-                    case SHORT: setValue(i, new PrimativeTypes.ShortValue(Arrays.copyOfRange(src.toBytes(), src.index, src.index+2+Short.BYTES))); src.skip(Short.BYTES+2); break;
-                    case CHAR: setValue(i, new PrimativeTypes.CharValue(Arrays.copyOfRange(src.toBytes(), src.index, src.index+2+Character.BYTES))); src.skip(Character.BYTES+2); break;
-                    case INT: setValue(i, new PrimativeTypes.IntValue(Arrays.copyOfRange(src.toBytes(), src.index, src.index+2+Integer.BYTES))); src.skip(Integer.BYTES+2); break;
-                    case FLOAT: setValue(i, new PrimativeTypes.FloatValue(Arrays.copyOfRange(src.toBytes(), src.index, src.index+2+Float.BYTES))); src.skip(Float.BYTES+2); break;
-                    case LONG: setValue(i, new PrimativeTypes.LongValue(Arrays.copyOfRange(src.toBytes(), src.index, src.index+2+Long.BYTES))); src.skip(Long.BYTES+2); break;
-                    case DOUBLE: setValue(i, new PrimativeTypes.DoubleValue(Arrays.copyOfRange(src.toBytes(), src.index, src.index+2+Double.BYTES))); src.skip(Double.BYTES+2); break;
-                }
-            } else if(type == SEType.STRING.value()) {
-                setValue(i, new SEString(Arrays.copyOfRange(src.toBytes(), src.index, src.index+serialSize)));
-                src.skip(serialSize);
-            } else {
-                //Just skip
-                src.skip(serialSize);
-            }
+            int start = src.index;
+            int serialSize = SEBase.getSerialSize(src);
+            if(serialSize <= 0 || serialSize > end - start) break;
+            
+            Serializable value = SEBase.deserializeValue(src, serialSize);
+            if(value != null) putValue(valueMap.size(), value);
+            src.index = start + serialSize;
         }
     }
     
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2017 DropDemBits <r3usrlnd@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package gio.ddb.serial2;
+
+import gio.ddb.serial2.types.PrimativeTypes.Primatives;
+
+/**
+ * List of longs, backed by a long array
+ * @author DropDemBits <r3usrlnd@gmail.com>
+ */
+public class SELongList extends SETypedList<long[]> {
+
+    /**
+     * Creates a new, empty SELongList
+     */
+    public SELongList() {
+        super(Primatives.LONG);
+    }
+    
+    /**
+     * Creates a new SELongList holding a copy of an array
+     * @param src The values to copy
+     */
+    public SELongList(long[] src) {
+        this();
+        addAll(src);
+    }
+    
+    /**
+     * Creates a new SELongList from a byte array, reading it in place
+     * @param src The array to parse
+     * @param offset The offset of the serialized list in the array
+     * @param length The length of the serialized list
+     */
+    public SELongList(byte[] src, int offset, int length) {
+        this(SETypedList.parserAt(src, offset), length);
+    }
+    
+    /**
+     * Creates a new SELongList from a parser, reading it in place
+     * The index of the parser is left in an undefined place
+     * @param src The parser containing the list, with the index pointing at the start of it
+     * @param length The length of the serialized list
+     */
+    SELongList(ByteArrayParser src, int length) {
+        super(Primatives.LONG, src, length);
+    }
+    
+    /**
+     * Gets the long at the specified index
+     * @param index The index to get the long from
+     * @return The long, or zero if the index is out of bounds
+     */
+    public long get(int index) {
+        if(index < 0 || index >= length) return 0;
+        return values[index];
+    }
+    
+    /**
+     * Copies a range of longs into an array
+     * @param index The index of the first long to copy
+     * @param dest The array to copy into
+     * @param offset The offset into dest to start copying to
+     * @param count The amount of longs to copy
+     */
+    public void get(int index, long[] dest, int offset, int count) {
+        getRange(index, dest, offset, count);
+    }
+    
+    /**
+     * Sets the long at the specified index
+     * Will append if the index is the length of the list, and will not do anything if the index is past it
+     * @param index The index to set the long at
+     * @param value The long to set
+     */
+    public void set(int index, long value) {
+        if(!reserve(index, 1)) return;
+        values[index] = value;
+        written(index + 1);
+    }
+    
+    /**
+     * Sets a range of longs, extending the list if the range goes past the end
+     * Will not do anything if the index is past the end of the list
+     * @param index The index to start setting longs at
+     * @param src The array to copy from
+     * @param offset The offset into src to start copying from
+     * @param count The amount of longs to copy
+     */
+    public void set(int index, long[] src, int offset, int count) {
+        setRange(index, src, offset, count);
+    }
+    
+    /**
+     * Appends a long
+     * @param value The long to append
+     */
+    public void add(long value) {
+        set(length, value);
+    }
+    
+    /**
+     * Appends all of the longs in an array
+     * @param src The longs to append
+     */
+    public void addAll(long[] src) {
+        addAll(src, 0, src.length);
+    }
+    
+    /**
+     * Appends a range of longs from an array
+     * @param src The array to copy from
+     * @param offset The offset into src to start copying from
+     * @param count The amount of longs to copy
+     */
+    public void addAll(long[] src, int offset, int count) {
+        set(length, src, offset, count);
+    }
+    
+    /**
+     * Copies the longs into a new array
+     * @return A new array containing all of the longs
+     */
+    public long[] toArray() {
+        return copyValues();
+    }
+    
+    @Override
+    protected long[] newArray(int capacity) {
+        return new long[capacity];
+    }
+    
+    @Override
+    protected void readValues(ByteArrayParser src, int count) {
+        src.getLongs(values, 0, count);
+    }
+    
+    @Override
+    protected void writeValues(ByteArrayParser dest) {
+        dest.addLongs(values, 0, length);
+    }
+    
+}
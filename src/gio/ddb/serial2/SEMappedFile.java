@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2017 DropDemBits <r3usrlnd@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package gio.ddb.serial2;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Memory-mapped .sdb2 file
+ * The file is paged in by the OS as it is read, so only the parts of the file that are touched are loaded.
+ * Files mapped as writable can have their fixed width values patched in place through the SEBlockView setters.
+ * @author DropDemBits <r3usrlnd@gmail.com>
+ */
+public class SEMappedFile implements Closeable {
+    
+    /* The opened file */
+    private final FileChannel channel;
+    /* The mapped file */
+    private final MappedByteBuffer buffer;
+    
+    /**
+     * Maps a file as read only
+     * Documents are limited to 2 GB, since sizes and offsets in the format are 32 bit
+     * @param path The path of the file
+     * @throws IOException If the file can't be opened or mapped, or is too big
+     */
+    public SEMappedFile(Path path) throws IOException {
+        this(path, false);
+    }
+    
+    /**
+     * Maps a file
+     * Documents are limited to 2 GB, since sizes and offsets in the format are 32 bit
+     * @param path The path of the file
+     * @param writable True to map the file for patching
+     * @throws IOException If the file can't be opened or mapped, or is too big
+     */
+    public SEMappedFile(Path path, boolean writable) throws IOException {
+        channel = writable
+                ? FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            if(channel.size() > Integer.MAX_VALUE)
+                throw new IOException("SDB2 documents can't be larger than 2 GB: " + path);
+            buffer = channel.map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch(IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Gets a view of the root block
+     * @return A view of the root block
+     */
+    public SEBlockView getRoot() {
+        return getRoot(null);
+    }
+    
+    /**
+     * Gets a view of the root block that may use a shared key dictionary
+     * @param dictionary The dictionary the file was written with, or null if there is none
+     * @return A view of the root block
+     */
+    public SEBlockView getRoot(SEKeyDictionary dictionary) {
+        return new SEBlockView(buffer.duplicate(), dictionary);
+    }
+    
+    /**
+     * Gets the size of the file
+     * @return The size of the file, in bytes
+     */
+    public int getSize() {
+        return buffer.capacity();
+    }
+    
+    /**
+     * Writes any patches made through the views back to the file
+     */
+    public void force() {
+        if(!buffer.isReadOnly()) buffer.force();
+    }
+    
+    /**
+     * Closes the file
+     * The mapping itself is released once the buffer and all views of it are garbage collected
+     * @throws IOException If closing the file fails
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+    
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2017 DropDemBits <r3usrlnd@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package gio.ddb.serial2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Serializes large documents on a ForkJoinPool
+ * Sizes are worked out up front, so every list element or block entry at least as big as the threshold
+ * is written by its own task, into its own region of the output array.
+ * The document must not be modified while it is being encoded.
+ * @author DropDemBits <r3usrlnd@gmail.com>
+ */
+public class SEParallelEncoder {
+    
+    /**
+     * The default size a value must be to be written by its own task, in bytes
+     */
+    public static final int DEFAULT_THRESHOLD = 64 * 1024;
+    
+    private final ForkJoinPool pool;
+    private final int threshold;
+    
+    /**
+     * Creates a new encoder using the common pool and the default threshold
+     */
+    public SEParallelEncoder() {
+        this(ForkJoinPool.commonPool(), DEFAULT_THRESHOLD);
+    }
+    
+    /**
+     * Creates a new encoder
+     * @param pool The pool to run the tasks on
+     * @param threshold The size a value must be to be written by its own task, in bytes
+     */
+    public SEParallelEncoder(ForkJoinPool pool, int threshold) {
+        this.pool = pool;
+        this.threshold = Math.max(threshold, 1);
+    }
+    
+    /**
+     * Serializes a value, giving the same bytes as getSerialized()
+     * @param value The value to serialize
+     * @return The serialized value
+     */
+    public byte[] encode(Serializable value) {
+        if(value instanceof SEBlock) return ((SEBlock) value).getSerialized(this);
+        
+        ByteArrayParser dest = newParser(value.getSize());
+        invoke(() -> value.writeTo(dest), dest);
+        return dest.toBytes();
+    }
+    
+    /**
+     * Creates a parser that forks tasks for large values
+     * @param size The size of the output
+     */
+    ByteArrayParser newParser(int size) {
+        return new ForkingParser(new byte[size], this);
+    }
+    
+    /**
+     * Runs a write on the pool, waiting for all of the tasks it forked
+     * @param body The write to run
+     * @param dest The parser from newParser() that is written to
+     */
+    void invoke(Runnable body, ByteArrayParser dest) {
+        pool.invoke(new WriteTask(body, (ForkingParser) dest));
+    }
+    
+    /**
+     * Parser that hands values at least as big as the threshold to their own tasks
+     */
+    static class ForkingParser extends ByteArrayParser {
+        
+        private final SEParallelEncoder encoder;
+        /* Tasks forked while writing into this parser */
+        private final List<WriteTask> forked = new ArrayList<>();
+        
+        ForkingParser(byte[] dest, SEParallelEncoder encoder) {
+            super(dest);
+            this.encoder = encoder;
+        }
+        
+        /**
+         * Creates a parser for a region of another parser's array
+         */
+        private ForkingParser(ForkingParser other) {
+            super(other);
+            this.encoder = other.encoder;
+        }
+        
+        /**
+         * Writes a value, or skips over its region and forks a task to write it
+         * @param value The value to write
+         */
+        void write(Serializable value) {
+            int size = value.getSize(getFormat());
+            if(size < encoder.threshold || (value instanceof SEBase && ((SEBase) value).getCached(getFormat()) != null)) {
+                SEBase.writeCached(this, value);
+                return;
+            }
+            
+            ForkingParser region = new ForkingParser(this);
+            index += size;
+            
+            WriteTask task = new WriteTask(() -> value.writeTo(region), region);
+            task.fork();
+            forked.add(task);
+        }
+        
+    }
+    
+    /**
+     * Task writing into a parser
+     */
+    private static class WriteTask extends RecursiveAction {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private final Runnable body;
+        private final ForkingParser dest;
+        
+        WriteTask(Runnable body, ForkingParser dest) {
+            this.body = body;
+            this.dest = dest;
+        }
+        
+        @Override
+        protected void compute() {
+            body.run();
+            for(WriteTask task : dest.forked)
+                task.join();
+        }
+        
+    }
+    
+}
@@ -16,8 +16,6 @@
  */
 package gio.ddb.serial2;
 
-import java.util.Arrays;
-
 /**
  * String primitive
  * @author DropDemBits <r3usrlnd@gmail.com>
@@ -26,8 +24,11 @@ public class SEString extends SEBase {
 
     /**
      * The String value that this contains
+     * Only changed through setValue(), so that containers hear about it
      */
-    public String value = "";
+    private String value = "";
+    /* UTF-8 bytes of the value, or null if they haven't been encoded yet */
+    private byte[] encoded;
     
     /* Not accessable anywhere else */
     private SEString() {}
@@ -37,7 +38,7 @@ public class SEString extends SEBase {
      * @param value The string that this will contain
      */
     SEString(String value) {
-        this.value = value;
+        this.value = value == null ? "" : value;
     }
     
     /**
@@ -45,31 +46,96 @@ public class SEString extends SEBase {
      * @param src The array to parse
      */
     SEString(byte[] src) {
-        if(src[0] != (byte)SEType.STRING.value()) return;
-        value = SEBase.parseString(Arrays.copyOfRange(src, 6, src.length));
+        this(src, 0, src.length);
+    }
+    
+    /**
+     * Creates a new SEString from a byte array, reading it in place
+     * @param src The array to parse
+     * @param offset The offset of the serialized string in the array
+     * @param length The length of the serialized string
+     */
+    SEString(byte[] src, int offset, int length) {
+        if(src[offset] != (byte)SEType.STRING.value()) return;
+        value = SEBase.parseString(src, offset + SEBase.BASE_SIZE, offset + length);
+    }
+    
+    /**
+     * Creates a new SEString from a parser, reading it in place
+     * The index of the parser is left in an undefined place
+     * @param src The parser containing the string, with the index pointing at the start of it
+     * @param length The length of the serialized string
+     */
+    SEString(ByteArrayParser src, int length) {
+        int end = src.index + length;
+        if(src.getShort() != SEType.STRING.value()) return;
+        src.index += Short.BYTES;
+        SEBase.readField(src);
+        value = SEBase.parseString(src.toBytes(), src.index, end);
+    }
+    
+    /**
+     * Gets the string value
+     * @return The value
+     */
+    public String getValue() {
+        return value;
+    }
+    
+    /**
+     * Changes the string value, passing the change in size to the parent
+     * @param value The new value
+     */
+    public void setValue(String value) {
+        int oldSize = getSize();
+        this.value = value == null ? "" : value;
+        encoded = null;
+        sizeChanged(getSize() - oldSize);
+    }
+    
+    /**
+     * Gets the UTF-8 bytes of the value, encoding it only once
+     * @return The encoded value
+     */
+    private byte[] getEncoded() {
+        if(encoded == null) encoded = SEBase.encodeString(value);
+        return encoded;
     }
     
     @Override
     public int getSize() {
-        return SEBase.BASE_SIZE + SEBase.getStringSize(value);
+        return SEBase.BASE_SIZE + SEBase.getStringSize(getEncoded());
     }
 
+    @Override
+    public int getSize(SEFormat format) {
+        if(!format.isCompact()) return getSize();
+        return SEBase.getCompactFrameSize(Short.BYTES + SEBase.getStringSize(getEncoded()));
+    }
+
+    @Override
+    protected boolean isCacheable() {
+        return true;
+    }
+    
     @Override
     public byte[] getSerialized() {
-        ByteArrayParser dest = new ByteArrayParser(getSize());
+        byte[] cached = getCached(SEFormat.DEFAULT);
+        if(cached != null) return cached.clone();
         
+        ByteArrayParser dest = new ByteArrayParser(getSize());
+        writeTo(dest);
+        return keepCached(dest.toBytes(), SEFormat.DEFAULT);
+    }
+
+    @Override
+    public void writeTo(ByteArrayParser dest) {
         //Common Part (Type & Size)
         dest.addShort(SEType.STRING.value());
-        dest.addInt(getSize());
+        SEBase.writeFrameSize(dest, getSize(dest.getFormat()));
         
         //Data (String)
-        dest.addShort((short)value.getBytes().length);
-        for(int i = 0; i < value.length(); i++) {
-            dest.addByte(value.getBytes()[i]);
-        }
-        dest.addByte((byte)0);
-        
-        return dest.toBytes();
+        SEBase.writeString(dest, getEncoded());
     }
 
     @Override
@@ -27,7 +27,8 @@ public enum SEType {
 	LIST,
 	PRIMATIVE,
 	ROOT_BLOCK,
-    STRING;
+    STRING,
+    ARRAY;
 	
     /**
      * Gets the ordinal value
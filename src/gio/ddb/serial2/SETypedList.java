@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2017 DropDemBits <r3usrlnd@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package gio.ddb.serial2;
+
+import gio.ddb.serial2.types.PrimativeTypes.Primatives;
+
+/**
+ * Base for lists that only hold one primitive type
+ * Serialized as the type, size & length, followed by the packed values (no per-value index or type)
+ * The values stay fixed width in the compact format, so they can still be copied in bulk.
+ * Holds the backing array, growth and framing. Subclasses only read & write the values themselves.
+ * @param <A> The type of the backing array (e.g. int[])
+ * @author DropDemBits <r3usrlnd@gmail.com>
+ */
+public abstract class SETypedList<A> extends SEBase {
+
+    /**
+     * Size of the header (type, size & length)
+     */
+    public static final int LIST_HEADER_SIZE = SEBase.BASE_SIZE + Integer.BYTES;
+    /**
+     * Initial capacity of the backing array
+     */
+    protected static final int DEFAULT_CAPACITY = 8;
+    
+    /**
+     * The type of the values in the list
+     */
+    private final Primatives elementType;
+    /**
+     * The amount of values in the list
+     */
+    protected int length = 0;
+    /**
+     * The backing array. Only the first length values are used
+     */
+    protected A values;
+    /**
+     * The length of the backing array
+     */
+    private int capacity;
+    
+    /**
+     * Creates a new, empty SETypedList
+     * @param elementType The type of the values in the list
+     */
+    protected SETypedList(Primatives elementType) {
+        this.elementType = elementType;
+        values = newArray(DEFAULT_CAPACITY);
+        capacity = DEFAULT_CAPACITY;
+    }
+    
+    /**
+     * Creates a new SETypedList from a parser, reading it in place
+     * The index of the parser is left in an undefined place
+     * @param elementType The type of the values in the list
+     * @param src The parser containing the list, with the index pointing at the start of it
+     * @param length The length of the serialized list
+     */
+    protected SETypedList(Primatives elementType, ByteArrayParser src, int length) {
+        this.elementType = elementType;
+        int count = readLength(src, length, elementType);
+        capacity = Math.max(count, DEFAULT_CAPACITY);
+        values = newArray(capacity);
+        readValues(src, count);
+        this.length = count;
+    }
+    
+    /**
+     * Gets the amount of values in the list
+     * @return The amount of values in the list
+     */
+    public int getLength() {
+        return length;
+    }
+    
+    /**
+     * Gets the type of the values in the list
+     * @return The type of the values
+     */
+    public Primatives getElementType() {
+        return elementType;
+    }
+    
+    /**
+     * Gets the serial type of a typed list
+     * @param elementType The type of the values in the list
+     * @return The serial type, as returned by getType()
+     */
+    public static short getType(Primatives elementType) {
+        return (short) (SEType.ARRAY.value() | elementType.ordinal() << 8);
+    }
+    
+    /**
+     * Changes the length of the list, passing the change in size to the parent
+     * @param newLength The new length
+     */
+    protected void setLength(int newLength) {
+        int delta = (newLength - length) * elementType.size;
+        length = newLength;
+        sizeChanged(delta);
+    }
+    
+    /**
+     * Computes the capacity needed to hold a number of values
+     * @param current The current capacity
+     * @param needed The amount of values that need to fit
+     * @return The new capacity
+     */
+    protected static int grow(int current, int needed) {
+        return Math.max(needed, Math.max(current * 2, DEFAULT_CAPACITY));
+    }
+    
+    /**
+     * Makes sure the backing array can hold a number of values
+     * @param needed The amount of values that need to fit
+     */
+    private void ensureCapacity(int needed) {
+        if(needed <= capacity) return;
+        capacity = grow(capacity, needed);
+        A grown = newArray(capacity);
+        System.arraycopy(values, 0, grown, 0, length);
+        values = grown;
+    }
+    
+    /**
+     * Makes room for values to be written, starting at an index
+     * @param index The index of the first value
+     * @param count The amount of values
+     * @return True if the values can be written, false if the index is past the end of the list
+     */
+    protected boolean reserve(int index, int count) {
+        if(index < 0 || index > length || count < 0) return false;
+        ensureCapacity(index + count);
+        return true;
+    }
+    
+    /**
+     * Finishes writing values, extending the list if they went past the end
+     * @param end The index after the last value written
+     */
+    protected void written(int end) {
+        if(end > length) setLength(end);
+        else sizeChanged(0);
+    }
+    
+    /**
+     * Copies a range of values into an array
+     * @param index The index of the first value to copy
+     * @param dest The array to copy into
+     * @param offset The offset into dest to start copying to
+     * @param count The amount of values to copy
+     */
+    protected void getRange(int index, A dest, int offset, int count) {
+        checkRange(index, count);
+        System.arraycopy(values, index, dest, offset, count);
+    }
+    
+    /**
+     * Sets a range of values, extending the list if the range goes past the end
+     * Will not do anything if the index is past the end of the list
+     * @param index The index to start setting values at
+     * @param src The array to copy from
+     * @param offset The offset into src to start copying from
+     * @param count The amount of values to copy
+     */
+    protected void setRange(int index, A src, int offset, int count) {
+        if(!reserve(index, count)) return;
+        System.arraycopy(src, offset, values, index, count);
+        written(index + count);
+    }
+    
+    /**
+     * Copies the values into a new array
+     * @return A new array containing all of the values
+     */
+    protected A copyValues() {
+        A copy = newArray(length);
+        System.arraycopy(values, 0, copy, 0, length);
+        return copy;
+    }
+    
+    /**
+     * Checks that a range of values is inside the list
+     * @param index The index of the first value
+     * @param count The amount of values
+     */
+    protected void checkRange(int index, int count) {
+        if(index < 0 || count < 0 || index + count > length)
+            throw new IndexOutOfBoundsException("Range [" + index + ", " + (index + count) + ") out of bounds for length " + length);
+    }
+    
+    /**
+     * Creates a parser pointing at a serialized list
+     * @param src The array containing the list
+     * @param offset The offset of the serialized list
+     * @return The parser
+     */
+    static ByteArrayParser parserAt(byte[] src, int offset) {
+        ByteArrayParser parser = new ByteArrayParser(src);
+        parser.index = offset;
+        return parser;
+    }
+    
+    /**
+     * Reads the header of a serialized typed list in the parser's format
+     * If the list is valid, the index is left at the start of the packed values
+     * @param src The parser containing the list, with the index pointing at the start of it
+     * @param length The length of the serialized list
+     * @param elementType The expected type of the values
+     * @return The amount of values in the list, or zero if the list is malformed
+     */
+    private static int readLength(ByteArrayParser src, int length, Primatives elementType) {
+        int end = src.index + length;
+        if(length < SEBase.BASE_SIZE || src.getShort() != getType(elementType)) return 0;
+        
+        src.index += Short.BYTES;
+        SEBase.readField(src);
+        int count = SEBase.readField(src);
+        if(count < 0 || (long) count * elementType.size > end - src.index) return 0;
+        
+        return count;
+    }
+    
+    /**
+     * Creates a backing array
+     * @param capacity The length of the array
+     * @return The new array
+     */
+    protected abstract A newArray(int capacity);
+    
+    /**
+     * Reads the packed values into the start of the backing array
+     * @param src The parser to read from, with the index pointing at the first value
+     * @param count The amount of values to read
+     */
+    protected abstract void readValues(ByteArrayParser src, int count);
+    
+    /**
+     * Writes the packed values
+     * @param dest The parser to write to
+     */
+    protected abstract void writeValues(ByteArrayParser dest);
+    
+    @Override
+    public int getSize() {
+        return LIST_HEADER_SIZE + length * elementType.size;
+    }
+    
+    @Override
+    public int getSize(SEFormat format) {
+        if(!format.isCompact()) return getSize();
+        return SEBase.getCompactFrameSize(Short.BYTES + ByteArrayParser.varIntSize(length) + length * elementType.size);
+    }
+    
+    @Override
+    public short getType() {
+        return getType(elementType);
+    }
+    
+    @Override
+    public byte[] getSerialized() {
+        ByteArrayParser dest = new ByteArrayParser(getSize());
+        writeTo(dest);
+        return dest.toBytes();
+    }
+    
+    @Override
+    public void writeTo(ByteArrayParser dest) {
+        //Type
+        dest.addShort(getType());
+        
+        //Size
+        SEBase.writeFrameSize(dest, getSize(dest.getFormat()));
+        
+        //Length
+        if(dest.getFormat().isCompact()) dest.addVarInt(length);
+        else dest.addInt(length);
+        
+        writeValues(dest);
+    }
+    
+}
@@ -34,12 +34,42 @@ public interface Serializable {
 	 */
 	public int getSize();
 	
+	/**
+	 * Gets the size of the serialized object in a wire format
+	 * 
+	 * @param format The format the object will be written in
+	 * @return The size of the serialized object, in bytes
+	 */
+	public default int getSize(SEFormat format) {
+		return getSize();
+	}
+	
 	/**
 	 * Gets the serialized version of the object, in byte array form
 	 * 
 	 * @return The serialized version of the object
 	 */
 	public byte[] getSerialized();
+	
+	/**
+	 * Serializes the object into a buffer taken from a pool
+	 * The serialized object runs from 0 to the index of the parser. Release the parser once done with it
+	 * 
+	 * @param pool The pool to take the buffer from
+	 * @return The parser containing the serialized object
+	 */
+	public default ByteArrayParser serialize(ByteArrayPool pool) {
+		ByteArrayParser dest = new ByteArrayParser(pool, getSize());
+		writeTo(dest);
+		return dest;
+	}
+	
+	/**
+	 * Writes the serialized version of the object into a parser, starting at the current index
+	 * 
+	 * @param dest The parser to write the serialized object into
+	 */
+	public void writeTo(ByteArrayParser dest);
     
     /**
      * Gets the serializable type
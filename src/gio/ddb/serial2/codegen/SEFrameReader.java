@@ -0,0 +1,339 @@
+/*
+ * Copyright (C) 2017 DropDemBits <r3usrlnd@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package gio.ddb.serial2.codegen;
+
+import gio.ddb.serial2.ByteArrayParser;
+import gio.ddb.serial2.SEBase;
+import gio.ddb.serial2.SEBlock;
+import gio.ddb.serial2.SEFormat;
+import gio.ddb.serial2.SEKeyDictionary;
+import gio.ddb.serial2.SEType;
+import gio.ddb.serial2.SETypedList;
+import gio.ddb.serial2.types.PrimativeTypes;
+import gio.ddb.serial2.types.PrimativeTypes.Primatives;
+
+/**
+ * Walks the entries of a serialized block for generated codecs
+ * Values are read straight out of the array, without building an SEBlock.
+ * Documents in other formats (compact, dictionary or compressed) are converted to the default format first,
+ * apart from key indices, which are just skipped.
+ * @author DropDemBits <r3usrlnd@gmail.com>
+ */
+public final class SEFrameReader {
+    
+    /* The serialized document */
+    private final byte[] src;
+    private final ByteArrayParser parser;
+    /* Whether the blocks have key indices */
+    private final boolean indexed;
+    /* Bounds of the block */
+    private final int stringsStart, stringsEnd, end;
+    /* The current entry */
+    private int entry = -1;
+    private int keyOffset, valueOffset, valueSize;
+    private short valueType;
+    /* The start of the next entry */
+    private int next;
+    
+    /**
+     * Creates a reader for a block
+     * @param src The serialized document
+     * @param base The start of the block, including the root header
+     * @param offset The start of the block's type
+     * @param end The end of the block's data
+     */
+    private SEFrameReader(byte[] src, boolean indexed, int base, int offset, int end) {
+        this.src = src;
+        this.parser = new ByteArrayParser(src);
+        this.indexed = indexed;
+        this.end = end;
+        
+        parser.index = offset + SEBase.BASE_SIZE;
+        stringsStart = parser.index + Integer.BYTES;
+        stringsEnd = base + parser.getInt() + Integer.BYTES;
+        next = stringsStart <= stringsEnd && stringsEnd <= end ? stringsEnd : end;
+        
+        if(indexed && next + Integer.BYTES <= end) {
+            //The entries are walked in order, so the key index isn't needed
+            parser.index = next;
+            int count = parser.getInt();
+            next += Integer.BYTES;
+            next = count >= 0 && count <= (end - next) / SEBase.INDEX_ENTRY_SIZE ? next + count * SEBase.INDEX_ENTRY_SIZE : end;
+        }
+    }
+    
+    /**
+     * Opens the root block of a document
+     * @param src The serialized document
+     * @param dictionary The dictionary the document was serialized with, or null if there is none
+     * @return A reader for the root block, or null if the document is invalid
+     */
+    public static SEFrameReader openRoot(byte[] src, SEKeyDictionary dictionary) {
+        int minSize = SEBase.HEADER_SIZE + SEBase.BASE_SIZE + Integer.BYTES + SEBlock.FILE_FOOTER.length;
+        if(src.length < minSize) return null;
+        for(int i = 0; i < SEBase.DBSIG.length; i++) {
+            if(src[i] != SEBase.DBSIG[i]) return null;
+        }
+        
+        ByteArrayParser header = new ByteArrayParser(src);
+        header.index = SEBase.DBSIG.length;
+        int codecId = header.getInt();
+        header.index += Integer.BYTES;
+        short flags = header.getShort();
+        
+        if(codecId != 0 || (flags & ~SEFormat.FLAG_INDEX) != 0) {
+            //Not in the layout the reader understands, so convert it
+            SEBlock block = new SEBlock(src, dictionary);
+            block.setCodec(null);
+            block.setFormat(SEFormat.DEFAULT);
+            src = block.getSerialized();
+            flags = 0;
+        }
+        
+        int footer = src.length - SEBlock.FILE_FOOTER.length;
+        for(int i = 0; i < SEBlock.FILE_FOOTER.length; i++) {
+            if(src[footer + i] != SEBlock.FILE_FOOTER[i]) return null;
+        }
+        
+        header = new ByteArrayParser(src);
+        header.index = SEBase.HEADER_SIZE;
+        if(header.getShort() != SEType.ROOT_BLOCK.value()) return null;
+        
+        return new SEFrameReader(src, flags != 0, 0, SEBase.HEADER_SIZE, footer);
+    }
+    
+    /**
+     * Moves to the next entry
+     * @return True if there is another entry, false if the end of the block was reached
+     */
+    public boolean next() {
+        if(next + Integer.BYTES + Short.BYTES > end) return false;
+        
+        parser.index = next;
+        keyOffset = stringsStart + parser.getInt();
+        valueOffset = parser.index += Integer.BYTES;
+        valueType = parser.getShort();
+        
+        if((valueType & 0xFF) == SEType.PRIMATIVE.value()) {
+            int primative = valueType >> 8;
+            valueSize = primative >= 0 && primative < Primatives.values().length
+                    ? Short.BYTES + Primatives.values()[primative].size : -1;
+        } else if(valueOffset + SEBase.BASE_SIZE <= end) {
+            parser.index += Short.BYTES;
+            valueSize = parser.getInt();
+        } else {
+            valueSize = -1;
+        }
+        
+        if(valueSize <= 0 || valueOffset + valueSize > end) {
+            next = end;
+            return false;
+        }
+        
+        next = valueOffset + valueSize;
+        entry++;
+        return true;
+    }
+    
+    /**
+     * Finds which of the expected names the current entry has
+     * Entries written by a generated codec are in the same order as the names, so that one is checked first
+     * @param keys The encoded names, from SEFrameWriter.keys()
+     * @return The index of the matching name, or -1 if there is none
+     */
+    public int match(byte[][] keys) {
+        if(keyOffset < stringsStart || keyOffset + Short.BYTES >= stringsEnd) return -1;
+        parser.index = keyOffset;
+        int length = parser.getShort() & 0xFFFF;
+        if(keyOffset + Short.BYTES + length >= stringsEnd) return -1;
+        
+        if(entry < keys.length && matches(keys[entry], length)) return entry;
+        for(int i = 0; i < keys.length; i++) {
+            if(i != entry && matches(keys[i], length)) return i;
+        }
+        return -1;
+    }
+    
+    /**
+     * Checks if the name of the current entry is the same as a key
+     */
+    private boolean matches(byte[] key, int length) {
+        if(key.length != length) return false;
+        int start = keyOffset + Short.BYTES;
+        for(int i = 0; i < length; i++) {
+            if(src[start + i] != key[i]) return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Reads the bits of the current entry if it is a primitive of the right type
+     */
+    private long readBits(Primatives type) {
+        if(valueType != PrimativeTypes.getType(type)) return 0;
+        return PrimativeTypes.readBits(src, valueOffset + Short.BYTES, type);
+    }
+    
+    /**
+     * Reads the current entry as a boolean
+     * @return The value, or false if the entry isn't a boolean
+     */
+    public boolean readBoolean() {
+        return readBits(Primatives.BOOLEAN) != 0;
+    }
+    
+    /**
+     * Reads the current entry as a byte
+     * @return The value, or zero if the entry isn't a byte
+     */
+    public byte readByte() {
+        return (byte) readBits(Primatives.BYTE);
+    }
+    
+    /**
+     * Reads the current entry as a char
+     * @return The value, or zero if the entry isn't a char
+     */
+    public char readChar() {
+        return (char) readBits(Primatives.CHAR);
+    }
+    
+    /**
+     * Reads the current entry as a short
+     * @return The value, or zero if the entry isn't a short
+     */
+    public short readShort() {
+        return (short) readBits(Primatives.SHORT);
+    }
+    
+    /**
+     * Reads the current entry as an int
+     * @return The value, or zero if the entry isn't an int
+     */
+    public int readInt() {
+        return (int) readBits(Primatives.INT);
+    }
+    
+    /**
+     * Reads the current entry as a long
+     * @return The value, or zero if the entry isn't a long
+     */
+    public long readLong() {
+        return readBits(Primatives.LONG);
+    }
+    
+    /**
+     * Reads the current entry as a float
+     * @return The value, or zero if the entry isn't a float
+     */
+    public float readFloat() {
+        return Float.intBitsToFloat((int) readBits(Primatives.FLOAT));
+    }
+    
+    /**
+     * Reads the current entry as a double
+     * @return The value, or zero if the entry isn't a double
+     */
+    public double readDouble() {
+        return Double.longBitsToDouble(readBits(Primatives.DOUBLE));
+    }
+    
+    /**
+     * Reads the current entry as a string
+     * @return The string, or null if the entry isn't a string
+     */
+    public String readString() {
+        if(valueType != SEType.STRING.value()) return null;
+        return SEBase.parseString(src, valueOffset + SEBase.BASE_SIZE, valueOffset + valueSize);
+    }
+    
+    /**
+     * Reads the length of the current entry if it is a typed list of the right type
+     * @return The length, leaving the parser at the values, or -1 if it isn't a typed list of the right type
+     */
+    private int readLength(Primatives type) {
+        if(valueType != SETypedList.getType(type)) return -1;
+        
+        parser.index = valueOffset + SEBase.BASE_SIZE;
+        int length = parser.getInt();
+        parser.index += Integer.BYTES;
+        if(length < 0 || (long) length * type.size > valueSize - SETypedList.LIST_HEADER_SIZE) return -1;
+        return length;
+    }
+    
+    /**
+     * Reads the current entry as a byte array
+     * @return The values, or null if the entry isn't an SEByteList
+     */
+    public byte[] readBytes() {
+        int length = readLength(Primatives.BYTE);
+        if(length < 0) return null;
+        
+        byte[] values = new byte[length];
+        System.arraycopy(src, parser.index, values, 0, length);
+        return values;
+    }
+    
+    /**
+     * Reads the current entry as an int array
+     * @return The values, or null if the entry isn't an SEIntList
+     */
+    public int[] readInts() {
+        int length = readLength(Primatives.INT);
+        if(length < 0) return null;
+        
+        int[] values = new int[length];
+        parser.getInts(values, 0, length);
+        return values;
+    }
+    
+    /**
+     * Reads the current entry as a long array
+     * @return The values, or null if the entry isn't an SELongList
+     */
+    public long[] readLongs() {
+        int length = readLength(Primatives.LONG);
+        if(length < 0) return null;
+        
+        long[] values = new long[length];
+        parser.getLongs(values, 0, length);
+        return values;
+    }
+    
+    /**
+     * Reads the current entry as a double array
+     * @return The values, or null if the entry isn't an SEDoubleList
+     */
+    public double[] readDoubles() {
+        int length = readLength(Primatives.DOUBLE);
+        if(length < 0) return null;
+        
+        double[] values = new double[length];
+        parser.getDoubles(values, 0, length);
+        return values;
+    }
+    
+    /**
+     * Opens the current entry as a nested block
+     * @return A reader for the block, or null if the entry isn't a block
+     */
+    public SEFrameReader readBlock() {
+        if(valueType != SEType.BLOCK.value() || valueSize < SEBase.BASE_SIZE + Integer.BYTES) return null;
+        return new SEFrameReader(src, indexed, valueOffset, valueOffset, valueOffset + valueSize);
+    }
+    
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2017 DropDemBits <r3usrlnd@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package gio.ddb.serial2.codegen;
+
+import gio.ddb.serial2.ByteArrayParser;
+import gio.ddb.serial2.SEBase;
+import gio.ddb.serial2.SEBlock;
+import gio.ddb.serial2.SEType;
+import gio.ddb.serial2.SETypedList;
+import gio.ddb.serial2.types.PrimativeTypes;
+import gio.ddb.serial2.types.PrimativeTypes.Primatives;
+
+/**
+ * Writes the block layout for generated codecs
+ * Blocks are written in a single pass in the default format, and the frame size is filled in once the
+ * block is done, so the parser must be able to seek back (any parser but a ByteStreamParser).
+ * @author DropDemBits <r3usrlnd@gmail.com>
+ */
+public final class SEFrameWriter {
+    
+    private SEFrameWriter() {}
+    
+    /**
+     * Encodes the names of a block's entries
+     * @param names The names of the entries
+     * @return The UTF-8 bytes of each name
+     */
+    public static byte[][] keys(String... names) {
+        byte[][] keys = new byte[names.length][];
+        for(int i = 0; i < names.length; i++)
+            keys[i] = SEBase.encodeString(names[i]);
+        return keys;
+    }
+    
+    /**
+     * Builds the string table of a block
+     * @param keys The encoded names of the entries
+     * @return The serialized string table
+     */
+    public static byte[] stringTable(byte[][] keys) {
+        int size = 0;
+        for(byte[] key : keys)
+            size += SEBase.getStringSize(key);
+        
+        ByteArrayParser table = new ByteArrayParser(size);
+        for(byte[] key : keys) {
+            table.addShort((short) key.length);
+            table.addBytes(key);
+            table.addByte((byte) 0);
+        }
+        return table.toBytes();
+    }
+    
+    /**
+     * Gets the offsets of the names in the string table
+     * @param keys The encoded names of the entries
+     * @return The offset of each name, relative to the start of the string table
+     */
+    public static int[] keyOffsets(byte[][] keys) {
+        int[] offsets = new int[keys.length];
+        int offset = 0;
+        for(int i = 0; i < keys.length; i++) {
+            offsets[i] = offset;
+            offset += SEBase.getStringSize(keys[i]);
+        }
+        return offsets;
+    }
+    
+    /**
+     * Writes the root header
+     * @param dest The parser to write to
+     */
+    public static void writeHeader(ByteArrayParser dest) {
+        dest.addBytes(SEBase.DBSIG);
+        dest.addInt(0);
+        dest.addShort((short) 0);
+        dest.addBytes(SEBase.HDEND);
+    }
+    
+    /**
+     * Writes the root footer
+     * @param dest The parser to write to
+     */
+    public static void writeFooter(ByteArrayParser dest) {
+        dest.addBytes(SEBlock.FILE_FOOTER);
+    }
+    
+    /**
+     * Starts a block, writing everything up to the first entry
+     * @param dest The parser to write to
+     * @param root True if the block is the root block, right after the root header
+     * @param strings The string table of the block
+     * @return The start of the block, to pass to endFrame()
+     */
+    public static int beginFrame(ByteArrayParser dest, boolean root, byte[] strings) {
+        int start = dest.index;
+        dest.addShort(root ? SEType.ROOT_BLOCK.value() : SEType.BLOCK.value());
+        dest.addInt(0);
+        dest.addInt((root ? SEBase.HEADER_SIZE : 0) + SEBase.BASE_SIZE + strings.length);
+        dest.addBytes(strings);
+        return start;
+    }
+    
+    /**
+     * Finishes a block by filling in its size
+     * @param dest The parser that was written to
+     * @param start The start of the block, from beginFrame()
+     */
+    public static void endFrame(ByteArrayParser dest, int start) {
+        int end = dest.index;
+        dest.index = start + Short.BYTES;
+        dest.addInt(end - start);
+        dest.index = end;
+    }
+    
+    /**
+     * Writes the key of an entry
+     * @param dest The parser to write to
+     * @param keyOffset The offset of the name in the string table
+     */
+    public static void key(ByteArrayParser dest, int keyOffset) {
+        dest.addInt(keyOffset);
+    }
+    
+    /**
+     * Writes a boolean value
+     * @param dest The parser to write to
+     * @param value The value to write
+     */
+    public static void writeBoolean(ByteArrayParser dest, boolean value) {
+        dest.addShort(PrimativeTypes.getType(Primatives.BOOLEAN));
+        dest.addBoolean(value);
+    }
+    
+    /**
+     * Writes a byte value
+     * @param dest The parser to write to
+     * @param value The value to write
+     */
+    public static void writeByte(ByteArrayParser dest, byte value) {
+        dest.addShort(PrimativeTypes.getType(Primatives.BYTE));
+        dest.addByte(value);
+    }
+    
+    /**
+     * Writes a char value
+     * @param dest The parser to write to
+     * @param value The value to write
+     */
+    public static void writeChar(ByteArrayParser dest, char value) {
+        dest.addShort(PrimativeTypes.getType(Primatives.CHAR));
+        dest.addShort((short) value);
+    }
+    
+    /**
+     * Writes a short value
+     * @param dest The parser to write to
+     * @param value The value to write
+     */
+    public static void writeShort(ByteArrayParser dest, short value) {
+        dest.addShort(PrimativeTypes.getType(Primatives.SHORT));
+        dest.addShort(value);
+    }
+    
+    /**
+     * Writes an int value
+     * @param dest The parser to write to
+     * @param value The value to write
+     */
+    public static void writeInt(ByteArrayParser dest, int value) {
+        dest.addShort(PrimativeTypes.getType(Primatives.INT));
+        dest.addInt(value);
+    }
+    
+    /**
+     * Writes a long value
+     * @param dest The parser to write to
+     * @param value The value to write
+     */
+    public static void writeLong(ByteArrayParser dest, long value) {
+        dest.addShort(PrimativeTypes.getType(Primatives.LONG));
+        dest.addLong(value);
+    }
+    
+    /**
+     * Writes a float value
+     * @param dest The parser to write to
+     * @param value The value to write
+     */
+    public static void writeFloat(ByteArrayParser dest, float value) {
+        dest.addShort(PrimativeTypes.getType(Primatives.FLOAT));
+        dest.addInt(Float.floatToRawIntBits(value));
+    }
+    
+    /**
+     * Writes a double value
+     * @param dest The parser to write to
+     * @param value The value to write
+     */
+    public static void writeDouble(ByteArrayParser dest, double value) {
+        dest.addShort(PrimativeTypes.getType(Primatives.DOUBLE));
+        dest.addLong(Double.doubleToRawLongBits(value));
+    }
+    
+    /**
+     * Writes a string value, in the same layout as SEString
+     * @param dest The parser to write to
+     * @param value The string to write
+     */
+    public static void writeString(ByteArrayParser dest, String value) {
+        byte[] encoded = SEBase.encodeString(value);
+        dest.addShort(SEType.STRING.value());
+        dest.addInt(SEBase.BASE_SIZE + SEBase.getStringSize(encoded));
+        dest.addShort((short) encoded.length);
+        dest.addBytes(encoded);
+        dest.addByte((byte) 0);
+    }
+    
+    /**
+     * Writes the header of a typed list
+     */
+    private static void writeListHeader(ByteArrayParser dest, Primatives type, int length) {
+        dest.addShort(SETypedList.getType(type));
+        dest.addInt(SETypedList.LIST_HEADER_SIZE + length * type.size);
+        dest.addInt(length);
+    }
+    
+    /**
+     * Writes a byte array, in the same layout as SEByteList
+     * @param dest The parser to write to
+     * @param values The values to write
+     */
+    public static void writeBytes(ByteArrayParser dest, byte[] values) {
+        writeListHeader(dest, Primatives.BYTE, values.length);
+        dest.addBytes(values);
+    }
+    
+    /**
+     * Writes an int array, in the same layout as SEIntList
+     * @param dest The parser to write to
+     * @param values The values to write
+     */
+    public static void writeInts(ByteArrayParser dest, int[] values) {
+        writeListHeader(dest, Primatives.INT, values.length);
+        dest.addInts(values, 0, values.length);
+    }
+    
+    /**
+     * Writes a long array, in the same layout as SELongList
+     * @param dest The parser to write to
+     * @param values The values to write
+     */
+    public static void writeLongs(ByteArrayParser dest, long[] values) {
+        writeListHeader(dest, Primatives.LONG, values.length);
+        dest.addLongs(values, 0, values.length);
+    }
+    
+    /**
+     * Writes a double array, in the same layout as SEDoubleList
+     * @param dest The parser to write to
+     * @param values The values to write
+     */
+    public static void writeDoubles(ByteArrayParser dest, double[] values) {
+        writeListHeader(dest, Primatives.DOUBLE, values.length);
+        dest.addDoubles(values, 0, values.length);
+    }
+    
+}
@@ -0,0 +1,355 @@
+/*
+ * Copyright (C) 2017 DropDemBits <r3usrlnd@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package gio.ddb.serial2.codegen;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates SDB2 codecs for classes marked with SERecord
+ * Each codec writes the fields of a record straight into the block layout in a fixed order, and reads them
+ * back by walking the entries, without going through SEBlock.
+ * Supported field types are the primitives, String, byte[], int[], long[], double[] and other SERecords.
+ * @author DropDemBits <r3usrlnd@gmail.com>
+ */
+@SupportedAnnotationTypes("gio.ddb.serial2.codegen.SERecord")
+public class SERecordProcessor extends AbstractProcessor {
+    
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+    
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for(Element element : roundEnv.getElementsAnnotatedWith(SERecord.class)) {
+            if(element.getKind() != ElementKind.CLASS) {
+                error(element, "@SERecord can only be used on classes");
+                continue;
+            }
+            
+            TypeElement type = (TypeElement) element;
+            List<RecordField> fields = getFields(type);
+            if(fields == null) continue;
+            
+            try {
+                generate(type, fields);
+            } catch(IOException e) {
+                error(type, "Can't write the codec: " + e.getMessage());
+            }
+        }
+        
+        return true;
+    }
+    
+    /**
+     * A field of a record and how it is encoded
+     */
+    private static class RecordField {
+        final String field;
+        final String name;
+        final String kind;
+        final String codec;
+        final boolean nullable;
+        
+        RecordField(String field, String name, String kind, String codec, boolean nullable) {
+            this.field = field;
+            this.name = name;
+            this.kind = kind;
+            this.codec = codec;
+            this.nullable = nullable;
+        }
+    }
+    
+    /**
+     * Gets the encoded fields of a record, checking that they can be encoded
+     * @return The fields in declaration order, or null if the record is invalid
+     */
+    private List<RecordField> getFields(TypeElement type) {
+        boolean valid = true;
+        
+        if(type.getModifiers().contains(Modifier.PRIVATE) || type.getModifiers().contains(Modifier.ABSTRACT)
+                || (type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC))
+                || type.getNestingKind() == NestingKind.LOCAL || type.getNestingKind() == NestingKind.ANONYMOUS) {
+            error(type, "@SERecord classes must be non-abstract, non-private top level or static nested classes");
+            valid = false;
+        }
+        
+        boolean hasConstructor = false;
+        for(Element member : type.getEnclosedElements()) {
+            if(member.getKind() == ElementKind.CONSTRUCTOR && ((ExecutableElement) member).getParameters().isEmpty()
+                    && !member.getModifiers().contains(Modifier.PRIVATE))
+                hasConstructor = true;
+        }
+        if(!hasConstructor) {
+            error(type, "@SERecord classes need a non-private no-argument constructor");
+            valid = false;
+        }
+        
+        List<RecordField> fields = new ArrayList<>();
+        for(Element member : type.getEnclosedElements()) {
+            if(member.getKind() != ElementKind.FIELD) continue;
+            
+            Set<Modifier> modifiers = member.getModifiers();
+            SEField options = member.getAnnotation(SEField.class);
+            if(modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)) continue;
+            if(options != null && options.ignore()) continue;
+            
+            if(modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.FINAL)) {
+                error(member, "@SERecord fields must not be private or final");
+                valid = false;
+                continue;
+            }
+            
+            String field = member.getSimpleName().toString();
+            String name = options != null && !options.value().isEmpty() ? options.value() : field;
+            RecordField recordField = getField((VariableElement) member, field, name);
+            
+            if(recordField == null) {
+                error(member, "Unsupported @SERecord field type " + member.asType());
+                valid = false;
+            } else {
+                for(RecordField other : fields) {
+                    if(other.name.equals(name)) {
+                        error(member, "Duplicate entry name \"" + name + "\"");
+                        valid = false;
+                    }
+                }
+                fields.add(recordField);
+            }
+        }
+        
+        return valid ? fields : null;
+    }
+    
+    /**
+     * Works out how a field is encoded
+     * @return The field, or null if the type isn't supported
+     */
+    private RecordField getField(VariableElement element, String field, String name) {
+        TypeMirror type = element.asType();
+        
+        if(type.getKind().isPrimitive()) {
+            String kind = type.getKind().name();
+            return new RecordField(field, name, kind.charAt(0) + kind.substring(1).toLowerCase(), null, false);
+        }
+        
+        if(type.getKind() == TypeKind.ARRAY) {
+            switch(((ArrayType) type).getComponentType().getKind()) {
+                case BYTE: return new RecordField(field, name, "Bytes", null, true);
+                case INT: return new RecordField(field, name, "Ints", null, true);
+                case LONG: return new RecordField(field, name, "Longs", null, true);
+                case DOUBLE: return new RecordField(field, name, "Doubles", null, true);
+                default: return null;
+            }
+        }
+        
+        if(type.getKind() == TypeKind.DECLARED) {
+            TypeElement declared = (TypeElement) ((DeclaredType) type).asElement();
+            if(declared.getQualifiedName().contentEquals("java.lang.String"))
+                return new RecordField(field, name, "String", null, true);
+            if(declared.getAnnotation(SERecord.class) != null)
+                return new RecordField(field, name, "Block", getCodecName(declared, true), true);
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Gets the name of the codec generated for a record
+     * @param qualified True to include the package
+     */
+    private String getCodecName(TypeElement type, boolean qualified) {
+        StringBuilder name = new StringBuilder(type.getSimpleName());
+        for(Element outer = type.getEnclosingElement(); outer.getKind() != ElementKind.PACKAGE; outer = outer.getEnclosingElement())
+            name.insert(0, outer.getSimpleName() + "_");
+        name.append("Codec");
+        
+        String pkg = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        return qualified && !pkg.isEmpty() ? pkg + "." + name : name.toString();
+    }
+    
+    /**
+     * Writes the codec of a record
+     */
+    private void generate(TypeElement type, List<RecordField> fields) throws IOException {
+        String pkg = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        String codec = getCodecName(type, false);
+        String record = type.getQualifiedName().toString();
+        
+        try(PrintWriter out = new PrintWriter(processingEnv.getFiler()
+                .createSourceFile(getCodecName(type, true), type).openWriter())) {
+            if(!pkg.isEmpty()) {
+                out.println("package " + pkg + ";");
+                out.println();
+            }
+            out.println("import gio.ddb.serial2.ByteArrayParser;");
+            out.println("import gio.ddb.serial2.SEKeyDictionary;");
+            out.println("import gio.ddb.serial2.codegen.SEFrameReader;");
+            out.println("import gio.ddb.serial2.codegen.SEFrameWriter;");
+            out.println();
+            out.println("/**");
+            out.println(" * SDB2 codec for " + type.getSimpleName() + ", generated by SERecordProcessor");
+            out.println(" */");
+            out.println("public final class " + codec + " {");
+            out.println();
+            
+            StringBuilder names = new StringBuilder();
+            for(RecordField field : fields) {
+                if(names.length() > 0) names.append(", ");
+                names.append('"').append(escape(field.name)).append('"');
+            }
+            out.println("    private static final byte[][] KEYS = SEFrameWriter.keys(" + names + ");");
+            out.println("    private static final byte[] STRINGS = SEFrameWriter.stringTable(KEYS);");
+            out.println("    private static final int[] OFFSETS = SEFrameWriter.keyOffsets(KEYS);");
+            out.println();
+            out.println("    private " + codec + "() {}");
+            out.println();
+            
+            //Root encoding
+            out.println("    /**");
+            out.println("     * Serializes a record as a root block");
+            out.println("     */");
+            out.println("    public static byte[] encode(" + record + " value) {");
+            out.println("        ByteArrayParser dest = new ByteArrayParser(STRINGS.length + 64, true);");
+            out.println("        encodeTo(value, dest);");
+            out.println("        return dest.trim();");
+            out.println("    }");
+            out.println();
+            out.println("    /**");
+            out.println("     * Writes a record as a root block, in the default format");
+            out.println("     */");
+            out.println("    public static void encodeTo(" + record + " value, ByteArrayParser dest) {");
+            out.println("        SEFrameWriter.writeHeader(dest);");
+            out.println("        writeFrame(value, dest, true);");
+            out.println("        SEFrameWriter.writeFooter(dest);");
+            out.println("    }");
+            out.println();
+            
+            //Frame encoding
+            out.println("    /**");
+            out.println("     * Writes a record as a block");
+            out.println("     */");
+            out.println("    public static void writeFrame(" + record + " value, ByteArrayParser dest, boolean root) {");
+            out.println("        int start = SEFrameWriter.beginFrame(dest, root, STRINGS);");
+            for(int i = 0; i < fields.size(); i++) {
+                RecordField field = fields.get(i);
+                String access = "value." + field.field;
+                String indent = "        ";
+                
+                if(field.nullable) {
+                    out.println("        if(" + access + " != null) {");
+                    indent += "    ";
+                }
+                out.println(indent + "SEFrameWriter.key(dest, OFFSETS[" + i + "]);");
+                if(field.codec != null) out.println(indent + field.codec + ".writeFrame(" + access + ", dest, false);");
+                else out.println(indent + "SEFrameWriter.write" + field.kind + "(dest, " + access + ");");
+                if(field.nullable) out.println("        }");
+            }
+            out.println("        SEFrameWriter.endFrame(dest, start);");
+            out.println("    }");
+            out.println();
+            
+            //Decoding
+            out.println("    /**");
+            out.println("     * Deserializes a record from a root block");
+            out.println("     * @return The record, or null if the document is invalid");
+            out.println("     */");
+            out.println("    public static " + record + " decode(byte[] src) {");
+            out.println("        return decode(src, null);");
+            out.println("    }");
+            out.println();
+            out.println("    /**");
+            out.println("     * Deserializes a record from a root block that may use a shared key dictionary");
+            out.println("     * @return The record, or null if the document is invalid");
+            out.println("     */");
+            out.println("    public static " + record + " decode(byte[] src, SEKeyDictionary dictionary) {");
+            out.println("        SEFrameReader reader = SEFrameReader.openRoot(src, dictionary);");
+            out.println("        return reader == null ? null : readFrame(reader);");
+            out.println("    }");
+            out.println();
+            out.println("    /**");
+            out.println("     * Reads a record from a block. Entries that aren't fields of the record are skipped");
+            out.println("     */");
+            out.println("    public static " + record + " readFrame(SEFrameReader reader) {");
+            out.println("        " + record + " value = new " + record + "();");
+            out.println("        while(reader.next()) {");
+            out.println("            switch(reader.match(KEYS)) {");
+            for(int i = 0; i < fields.size(); i++) {
+                RecordField field = fields.get(i);
+                String access = "value." + field.field;
+                
+                if(field.codec != null) {
+                    out.println("                case " + i + ": {");
+                    out.println("                    SEFrameReader block = reader.readBlock();");
+                    out.println("                    " + access + " = block == null ? null : " + field.codec + ".readFrame(block);");
+                    out.println("                    break;");
+                    out.println("                }");
+                } else {
+                    out.println("                case " + i + ": " + access + " = reader.read" + field.kind + "(); break;");
+                }
+            }
+            out.println("                default: break;");
+            out.println("            }");
+            out.println("        }");
+            out.println("        return value;");
+            out.println("    }");
+            out.println();
+            out.println("}");
+        }
+    }
+    
+    /**
+     * Escapes a name for a string literal
+     */
+    private static String escape(String name) {
+        StringBuilder escaped = new StringBuilder();
+        for(char c : name.toCharArray()) {
+            if(c == '"' || c == '\\') escaped.append('\\').append(c);
+            else if(c < 0x20 || c > 0x7E) escaped.append(String.format("\\u%04x", (int) c));
+            else escaped.append(c);
+        }
+        return escaped.toString();
+    }
+    
+    /**
+     * Reports an error on an element
+     */
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+    
+}
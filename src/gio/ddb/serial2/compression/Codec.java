@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2017 DropDemBits <r3usrlnd@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package gio.ddb.serial2.compression;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compression codec for the payload of root blocks
+ * The ID of the codec is stored in the compression word of the root header, with 0 meaning uncompressed
+ * @author DropDemBits <r3usrlnd@gmail.com>
+ */
+public abstract class Codec {
+    
+    /**
+     * The codec ID of uncompressed blocks
+     */
+    public static final int NONE = 0;
+    
+    /* Codecs that can be used for decompression, by ID */
+    private static final Map<Integer, Codec> codecs = new HashMap<>();
+    
+    /**
+     * Fast LZ-family codec, for bandwidth-bound links
+     */
+    public static final Codec LZ = register(new LZCodec());
+    
+    /**
+     * Deflate codec, for better ratios on archives
+     */
+    public static final Codec DEFLATE = register(new DeflateCodec());
+    
+    /**
+     * Registers a codec so that blocks compressed with it can be decompressed
+     * Replaces any codec previously registered with the same ID
+     * @param codec The codec to register
+     * @return The registered codec
+     */
+    public static synchronized Codec register(Codec codec) {
+        if(codec.getId() == NONE) throw new IllegalArgumentException("Codec ID 0 is reserved for uncompressed blocks");
+        codecs.put(codec.getId(), codec);
+        return codec;
+    }
+    
+    /**
+     * Gets a registered codec
+     * @param id The ID of the codec
+     * @return The codec, or null if no codec is registered with that ID
+     */
+    public static synchronized Codec forId(int id) {
+        return codecs.get(id);
+    }
+    
+    /**
+     * Gets the ID of the codec, as stored in the root header
+     * @return The ID of the codec
+     */
+    public abstract int getId();
+    
+    /**
+     * Compresses part of a byte array
+     * @param src The array containing the data to compress
+     * @param offset The offset of the data in the array
+     * @param length The length of the data
+     * @return The compressed data
+     */
+    public abstract byte[] compress(byte[] src, int offset, int length);
+    
+    /**
+     * Decompresses part of a byte array into another array
+     * @param src The array containing the compressed data
+     * @param offset The offset of the compressed data in the array
+     * @param length The length of the compressed data
+     * @param dest The array to decompress into
+     * @param destOffset The offset in dest to start decompressing into
+     * @param rawLength The length of the data when decompressed
+     * @return True if exactly rawLength bytes were decompressed, false if the data is malformed
+     */
+    public abstract boolean decompress(byte[] src, int offset, int length, byte[] dest, int destOffset, int rawLength);
+    
+}
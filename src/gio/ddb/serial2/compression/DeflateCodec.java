@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2017 DropDemBits <r3usrlnd@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package gio.ddb.serial2.compression;
+
+import gio.ddb.serial2.Serializable;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Codec using java.util.zip's Deflater and Inflater
+ * Slower than LZCodec, but gives a better ratio
+ * @author DropDemBits <r3usrlnd@gmail.com>
+ */
+public class DeflateCodec extends Codec {
+    
+    /**
+     * The ID of the codec
+     */
+    public static final int ID = 2;
+    
+    /* The compression level given to the Deflater */
+    private final int level;
+    
+    /**
+     * Creates a new DeflateCodec with the default compression level
+     */
+    public DeflateCodec() {
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+    
+    /**
+     * Creates a new DeflateCodec
+     * Only needs to be registered for decompression, since any level can be decompressed
+     * @param level The compression level, from 0 to 9 (or Deflater.DEFAULT_COMPRESSION)
+     */
+    public DeflateCodec(int level) {
+        this.level = level;
+    }
+    
+    @Override
+    public int getId() {
+        return ID;
+    }
+    
+    @Override
+    public byte[] compress(byte[] src, int offset, int length) {
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(src, offset, length);
+            deflater.finish();
+            
+            byte[] dest = new byte[Math.max(64, length / 2)];
+            int size = 0;
+            while(!deflater.finished()) {
+                if(size == dest.length) dest = Arrays.copyOf(dest, dest.length * 2);
+                size += deflater.deflate(dest, size, dest.length - size);
+            }
+            return Arrays.copyOf(dest, size);
+        } finally {
+            deflater.end();
+        }
+    }
+    
+    @Override
+    public boolean decompress(byte[] src, int offset, int length, byte[] dest, int destOffset, int rawLength) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(src, offset, length);
+            int size = 0;
+            while(!inflater.finished()) {
+                int read = inflater.inflate(dest, destOffset + size, rawLength - size);
+                if(read == 0 && !inflater.finished()) return false;
+                size += read;
+            }
+            return size == rawLength && inflater.finished();
+        } catch(DataFormatException e) {
+            if(Serializable.DEBUG) System.err.println("ERR: Malformed deflate data");
+            return false;
+        } finally {
+            inflater.end();
+        }
+    }
+    
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2017 DropDemBits <r3usrlnd@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package gio.ddb.serial2.compression;
+
+import java.util.Arrays;
+
+/**
+ * LZ77 codec using the LZ4 block layout
+ * Each sequence is a token (literal length & match length nibbles), the literals, then a 2 byte match offset.
+ * Trades ratio for speed, which suits the repeated key tables of most documents.
+ * @author DropDemBits <r3usrlnd@gmail.com>
+ */
+public class LZCodec extends Codec {
+    
+    /**
+     * The ID of the codec
+     */
+    public static final int ID = 1;
+    
+    private static final int MIN_MATCH = 4;
+    private static final int MAX_OFFSET = 0xFFFF;
+    /* The last bytes are always literals, so matches can be read without bounds checks */
+    private static final int LAST_LITERALS = 5;
+    private static final int HASH_BITS = 14;
+    
+    @Override
+    public int getId() {
+        return ID;
+    }
+    
+    @Override
+    public byte[] compress(byte[] src, int offset, int length) {
+        //Worst case is all literals
+        byte[] dest = new byte[length + length / 255 + 16];
+        int[] table = new int[1 << HASH_BITS];
+        
+        int end = offset + length;
+        int matchLimit = end - LAST_LITERALS;
+        int anchor = offset;
+        int ip = offset;
+        int op = 0;
+        
+        while(ip + MIN_MATCH <= matchLimit) {
+            int sequence = readInt(src, ip);
+            int hash = (sequence * -1640531535) >>> (32 - HASH_BITS);
+            //Positions are stored +1, so 0 means empty
+            int ref = table[hash] - 1;
+            table[hash] = ip - offset + 1;
+            ref += offset;
+            
+            if(ref < offset || ip - ref > MAX_OFFSET || readInt(src, ref) != sequence) {
+                ip++;
+                continue;
+            }
+            
+            //Extend the match backwards into the pending literals, then forwards
+            while(ip > anchor && ref > offset && src[ip-1] == src[ref-1]) {
+                ip--;
+                ref--;
+            }
+            int matchLength = MIN_MATCH;
+            while(ip + matchLength < matchLimit && src[ip + matchLength] == src[ref + matchLength]) matchLength++;
+            
+            op = writeSequence(dest, op, src, anchor, ip - anchor, ip - ref, matchLength);
+            ip += matchLength;
+            anchor = ip;
+        }
+        
+        op = writeSequence(dest, op, src, anchor, end - anchor, 0, 0);
+        return Arrays.copyOf(dest, op);
+    }
+    
+    @Override
+    public boolean decompress(byte[] src, int offset, int length, byte[] dest, int destOffset, int rawLength) {
+        int end = offset + length;
+        int destEnd = destOffset + rawLength;
+        int ip = offset;
+        int op = destOffset;
+        
+        if(end > src.length || destEnd > dest.length) return false;
+        
+        while(ip < end) {
+            int token = src[ip++] & 0xFF;
+            
+            //Literals
+            int literals = token >>> 4;
+            if(literals == 15) {
+                int b;
+                do {
+                    if(ip >= end) return false;
+                    b = src[ip++] & 0xFF;
+                    literals += b;
+                } while(b == 255);
+            }
+            if(literals > end - ip || literals > destEnd - op) return false;
+            System.arraycopy(src, ip, dest, op, literals);
+            ip += literals;
+            op += literals;
+            
+            //Last sequence has no match
+            if(ip == end) break;
+            
+            //Match
+            if(ip + Short.BYTES > end) return false;
+            int matchOffset = (src[ip] & 0xFF) | (src[ip+1] & 0xFF) << 8;
+            ip += Short.BYTES;
+            
+            int matchLength = token & 0xF;
+            if(matchLength == 15) {
+                int b;
+                do {
+                    if(ip >= end) return false;
+                    b = src[ip++] & 0xFF;
+                    matchLength += b;
+                } while(b == 255);
+            }
+            matchLength += MIN_MATCH;
+            
+            int ref = op - matchOffset;
+            if(matchOffset == 0 || ref < destOffset || matchLength > destEnd - op) return false;
+            
+            if(matchOffset >= matchLength) {
+                System.arraycopy(dest, ref, dest, op, matchLength);
+            } else {
+                //Overlapping, so the copy repeats the pattern
+                for(int i = 0; i < matchLength; i++) dest[op+i] = dest[ref+i];
+            }
+            op += matchLength;
+        }
+        
+        return op == destEnd;
+    }
+    
+    /**
+     * Writes a sequence of literals followed by a match
+     * @return The new output position
+     */
+    private static int writeSequence(byte[] dest, int op, byte[] src, int literalStart, int literals, int matchOffset, int matchLength) {
+        int tokenPos = op++;
+        int token = Math.min(literals, 15) << 4;
+        if(literals >= 15) op = writeLength(dest, op, literals - 15);
+        
+        System.arraycopy(src, literalStart, dest, op, literals);
+        op += literals;
+        
+        if(matchLength > 0) {
+            dest[op++] = (byte) matchOffset;
+            dest[op++] = (byte) (matchOffset >>> 8);
+            
+            int extra = matchLength - MIN_MATCH;
+            token |= Math.min(extra, 15);
+            if(extra >= 15) op = writeLength(dest, op, extra - 15);
+        }
+        
+        dest[tokenPos] = (byte) token;
+        return op;
+    }
+    
+    /**
+     * Writes the extended part of a length, as a run of 255s and a final byte
+     * @return The new output position
+     */
+    private static int writeLength(byte[] dest, int op, int length) {
+        while(length >= 255) {
+            dest[op++] = (byte) 255;
+            length -= 255;
+        }
+        dest[op++] = (byte) length;
+        return op;
+    }
+    
+    private static int readInt(byte[] src, int index) {
+        return (src[index] & 0xFF) | (src[index+1] & 0xFF) << 8 | (src[index+2] & 0xFF) << 16 | src[index+3] << 24;
+    }
+    
+}
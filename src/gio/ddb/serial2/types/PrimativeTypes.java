@@ -16,6 +16,8 @@
  */
 package gio.ddb.serial2.types;
 
+import gio.ddb.serial2.ByteArrayParser;
+import gio.ddb.serial2.SEFormat;
 import gio.ddb.serial2.SEType;
 import gio.ddb.serial2.Serializable;
 
@@ -26,67 +28,163 @@ import gio.ddb.serial2.Serializable;
 public class PrimativeTypes {
 
 	public static enum Primatives {
-		BOOLEAN,
-		BYTE,
-		CHAR,
-		SHORT,
-		INT,
-		LONG,
-		FLOAT,
-		DOUBLE,
+		BOOLEAN(Byte.BYTES),
+		BYTE(Byte.BYTES),
+		CHAR(Character.BYTES),
+		SHORT(Short.BYTES),
+		INT(Integer.BYTES),
+		LONG(Long.BYTES),
+		FLOAT(Float.BYTES),
+		DOUBLE(Double.BYTES);
+		
+        /**
+         * The size of the value (without the type), in bytes
+         */
+		public final int size;
+		
+		private Primatives(int size) {
+			this.size = size;
+		}
 	}
 	
-	static byte[] toBytesL(long toBytes) {
-        byte[] retval = new byte[Long.BYTES];
-        for(int off = 0; off < Long.BYTES; off++) {
-            retval[off] = (byte)(toBytes >> (off*8) & 0xFF);
+    /**
+     * Gets the serial type of a primitive
+     * @param type The primitive type
+     * @return The serial type, as returned by getType()
+     */
+    public static short getType(Primatives type) {
+        return (short) (SEType.PRIMATIVE.value() | type.ordinal() << 8);
+    }
+    
+    /**
+     * Gets the primitive type of a value
+     * @param value The value to check
+     * @return The primitive type, or null if the value isn't a known primitive
+     */
+    public static Primatives getPrimative(Serializable value) {
+        if(value == null || (value.getType() & 0xFF) != SEType.PRIMATIVE.value()) return null;
+        int primative = value.getType() >> 8;
+        return primative < 0 || primative >= Primatives.values().length ? null : Primatives.values()[primative];
+    }
+    
+    /**
+     * Gets the raw bits of a primitive value, as stored in its serialized form
+     * @param value The primitive value
+     * @return The raw bits of the value, or zero if the value isn't a primitive
+     */
+    public static long toBits(Serializable value) {
+        if(value instanceof BooleanValue) return ((BooleanValue) value).value ? 1 : 0;
+        if(value instanceof ByteValue) return ((ByteValue) value).value & 0xFFL;
+        if(value instanceof CharValue) return ((CharValue) value).value;
+        if(value instanceof ShortValue) return ((ShortValue) value).value & 0xFFFFL;
+        if(value instanceof IntValue) return ((IntValue) value).value & 0xFFFFFFFFL;
+        if(value instanceof LongValue) return ((LongValue) value).value;
+        if(value instanceof FloatValue) return Float.floatToRawIntBits(((FloatValue) value).value) & 0xFFFFFFFFL;
+        if(value instanceof DoubleValue) return Double.doubleToRawLongBits(((DoubleValue) value).value);
+        return 0;
+    }
+    
+    /**
+     * Creates a primitive value from its raw bits
+     * @param type The primitive type
+     * @param bits The raw bits of the value
+     * @return The primitive value
+     */
+    public static Serializable fromBits(Primatives type, long bits) {
+        switch(type) {
+            case BOOLEAN: return new BooleanValue(bits != 0);
+            case BYTE: return new ByteValue((byte) bits);
+            case CHAR: return new CharValue((char) bits);
+            case SHORT: return new ShortValue((short) bits);
+            case INT: return new IntValue((int) bits);
+            case LONG: return new LongValue(bits);
+            case FLOAT: return new FloatValue(Float.intBitsToFloat((int) bits));
+            default: return new DoubleValue(Double.longBitsToDouble(bits));
         }
-        return retval;
-	}
-	
-	static byte[] toBytesI(int toBytes) {
-		byte[] retval = new byte[Integer.BYTES];
-        for(int off = 0; off < Integer.BYTES; off++) {
-            retval[off] = (byte)(toBytes >> (off*8) & 0xFF);
+    }
+    
+    /**
+     * Reads the raw bits of a serialized primitive value, without the type
+     * @param src The array containing the value
+     * @param offset The offset of the value, after the type
+     * @param type The primitive type
+     * @return The raw bits of the value
+     */
+    public static long readBits(byte[] src, int offset, Primatives type) {
+        long bits = 0;
+        for(int i = 0; i < type.size; i++) {
+            bits |= Byte.toUnsignedLong(src[offset+i]) << (i*8);
         }
-        return retval;
-	}
+        return bits;
+    }
     
-    static byte[] toBytes(int toBytes) {
-		byte[] intBits = toBytesI(toBytes);
-        byte[] retval = new byte[intBits.length + 2];
-        System.arraycopy(intBits, 0, retval, 2, intBits.length);
-        retval[0] = (byte) SEType.PRIMATIVE.value();
-        retval[1] = (byte) Primatives.INT.ordinal();
-        return retval;
-	}
-	
-	static byte[] toBytes(long toBytes) {
-		byte[] longBits = toBytesL(toBytes);
-        byte[] retval = new byte[longBits.length + 2];
-        System.arraycopy(longBits, 0, retval, 2, longBits.length);
-        retval[0] = (byte) SEType.PRIMATIVE.value();
-        retval[1] = (byte) Primatives.LONG.ordinal();
-        return retval;
-	}
+    /**
+     * Reads the raw bits of a serialized primitive value in the parser's format, without the type
+     * Will not change the current index
+     * @param src The parser containing the value
+     * @param offset The offset of the value, after the type
+     * @param type The primitive type
+     * @return The raw bits of the value
+     */
+    public static long readBits(ByteArrayParser src, int offset, Primatives type) {
+        if(!isVarint(type, src.getFormat())) return readBits(src.toBytes(), offset, type);
+        
+        int index = src.index;
+        src.index = offset;
+        long value = ByteArrayParser.unZigZag(src.readVarLong());
+        src.index = index;
+        return type == Primatives.INT ? value & 0xFFFFFFFFL : value;
+    }
     
-    static byte[] toBytes(float toBytes) {
-		byte[] floatBits = toBytesI(Float.floatToRawIntBits(toBytes));
-        byte[] retval = new byte[floatBits.length + 2];
-        System.arraycopy(floatBits, 0, retval, 2, floatBits.length);
-        retval[0] = (byte) SEType.PRIMATIVE.value();
-        retval[1] = (byte) Primatives.FLOAT.ordinal();
-        return retval;
-	}
-	
-	static byte[] toBytes(double toBytes) {
-		byte[] doubleBits = toBytesL(Double.doubleToRawLongBits(toBytes));
-        byte[] retval = new byte[doubleBits.length + 2];
-        System.arraycopy(doubleBits, 0, retval, 2, doubleBits.length);
-        retval[0] = (byte) SEType.PRIMATIVE.value();
-        retval[1] = (byte) Primatives.DOUBLE.ordinal();
-        return retval;
-	}
+    /**
+     * Checks if a primitive type is stored as a varint
+     * @param type The primitive type
+     * @param format The wire format
+     * @return True if the value is a zig-zag varint instead of fixed width
+     */
+    public static boolean isVarint(Primatives type, SEFormat format) {
+        return format.isCompact() && (type == Primatives.INT || type == Primatives.LONG);
+    }
+    
+    /**
+     * Gets the serialized size of a primitive value, including the type
+     * @param type The primitive type
+     * @param bits The raw bits of the value
+     * @param format The wire format
+     * @return The size of the serialized value, in bytes
+     */
+    public static int getSize(Primatives type, long bits, SEFormat format) {
+        if(!isVarint(type, format)) return Short.BYTES + type.size;
+        return Short.BYTES + ByteArrayParser.varLongSize(ByteArrayParser.zigZag(signExtend(type, bits)));
+    }
+    
+    /**
+     * Writes a primitive value from its raw bits in the parser's format, including the type
+     * @param dest The parser to write the value to
+     * @param type The primitive type
+     * @param bits The raw bits of the value
+     */
+    public static void writeBits(ByteArrayParser dest, Primatives type, long bits) {
+        dest.addShort(getType(type));
+        if(isVarint(type, dest.getFormat())) {
+            dest.addVarLong(ByteArrayParser.zigZag(signExtend(type, bits)));
+            return;
+        }
+        
+        switch(type.size) {
+            case Byte.BYTES: dest.addByte((byte) bits); break;
+            case Short.BYTES: dest.addShort((short) bits); break;
+            case Integer.BYTES: dest.addInt((int) bits); break;
+            default: dest.addLong(bits); break;
+        }
+    }
+    
+    /**
+     * Turns the masked raw bits of an int back into a signed value
+     */
+    private static long signExtend(Primatives type, long bits) {
+        return type == Primatives.INT ? (int) bits : bits;
+    }
 	
 	public static class BooleanValue implements Serializable {
 
@@ -97,8 +195,12 @@ public class PrimativeTypes {
 		}
         
         public BooleanValue(byte[] value) {
-            if(value[0] == SEType.PRIMATIVE.value() && value[1] == Primatives.BOOLEAN.ordinal()) {
-                this.value = value[2] != 0;
+            this(value, 0);
+        }
+        
+        public BooleanValue(byte[] value, int offset) {
+            if(value[offset] == SEType.PRIMATIVE.value() && value[offset+1] == Primatives.BOOLEAN.ordinal()) {
+                this.value = value[offset+2] != 0;
             } else this.value = false;
         }
 
@@ -109,7 +211,15 @@ public class PrimativeTypes {
 
 		@Override
 		public byte[] getSerialized() {
-			return new byte[] { (byte) SEType.PRIMATIVE.value(), (byte) Primatives.BOOLEAN.ordinal(),  !value ? (byte) 0 : (byte) 1 };
+			ByteArrayParser dest = new ByteArrayParser(getSize());
+			writeTo(dest);
+			return dest.toBytes();
+		}
+
+		@Override
+		public void writeTo(ByteArrayParser dest) {
+			dest.addShort(getType());
+			dest.addByte(value ? (byte) 1 : (byte) 0);
 		}
 
         @Override
@@ -128,8 +238,12 @@ public class PrimativeTypes {
 		}
         
         public ByteValue(byte[] value) {
-            if(value[0] == SEType.PRIMATIVE.value() && value[1] == Primatives.BYTE.ordinal()) {
-                this.value = value[2];
+            this(value, 0);
+        }
+        
+        public ByteValue(byte[] value, int offset) {
+            if(value[offset] == SEType.PRIMATIVE.value() && value[offset+1] == Primatives.BYTE.ordinal()) {
+                this.value = value[offset+2];
             } else this.value = 0;
         }
 
@@ -140,7 +254,15 @@ public class PrimativeTypes {
 
 		@Override
 		public byte[] getSerialized() {
-			return new byte[] { (byte) SEType.PRIMATIVE.value(), (byte) Primatives.BYTE.ordinal(), value };
+			ByteArrayParser dest = new ByteArrayParser(getSize());
+			writeTo(dest);
+			return dest.toBytes();
+		}
+
+		@Override
+		public void writeTo(ByteArrayParser dest) {
+			dest.addShort(getType());
+			dest.addByte(value);
 		}
 
         @Override
@@ -159,8 +281,12 @@ public class PrimativeTypes {
 		}
         
         public ShortValue(byte[] value) {
-            if(value[0] == SEType.PRIMATIVE.value() && value[1] == Primatives.SHORT.ordinal()) {
-                this.value = (short) (Byte.toUnsignedInt(value[2]) | (Byte.toUnsignedInt(value[3]) << 8));
+            this(value, 0);
+        }
+        
+        public ShortValue(byte[] value, int offset) {
+            if(value[offset] == SEType.PRIMATIVE.value() && value[offset+1] == Primatives.SHORT.ordinal()) {
+                this.value = (short) (Byte.toUnsignedInt(value[offset+2]) | (Byte.toUnsignedInt(value[offset+3]) << 8));
             } else this.value = 0;
         }
 
@@ -171,7 +297,15 @@ public class PrimativeTypes {
 
 		@Override
 		public byte[] getSerialized() {
-			return new byte[] { (byte) SEType.PRIMATIVE.value(), (byte) Primatives.SHORT.ordinal(), (byte) (value & 0xFF), (byte) (value >> 8) };
+			ByteArrayParser dest = new ByteArrayParser(getSize());
+			writeTo(dest);
+			return dest.toBytes();
+		}
+
+		@Override
+		public void writeTo(ByteArrayParser dest) {
+			dest.addShort(getType());
+			dest.addShort(value);
 		}
 
         @Override
@@ -190,8 +324,12 @@ public class PrimativeTypes {
 		}
         
         public CharValue(byte[] value) {
-            if(value[0] == SEType.PRIMATIVE.value() && value[1] == Primatives.CHAR.ordinal()) {
-                this.value = (char) (value[2] | value[3] << 8);
+            this(value, 0);
+        }
+        
+        public CharValue(byte[] value, int offset) {
+            if(value[offset] == SEType.PRIMATIVE.value() && value[offset+1] == Primatives.CHAR.ordinal()) {
+                this.value = (char) (Byte.toUnsignedInt(value[offset+2]) | (Byte.toUnsignedInt(value[offset+3]) << 8));
             } else this.value = 0;
         }
 
@@ -202,7 +340,15 @@ public class PrimativeTypes {
 
 		@Override
 		public byte[] getSerialized() {
-			return new byte[] { (byte) SEType.PRIMATIVE.value(), (byte) Primatives.CHAR.ordinal(), (byte) (value & 0xFF), (byte) (value >> 8) };
+			ByteArrayParser dest = new ByteArrayParser(getSize());
+			writeTo(dest);
+			return dest.toBytes();
+		}
+
+		@Override
+		public void writeTo(ByteArrayParser dest) {
+			dest.addShort(getType());
+			dest.addShort((short) value);
 		}
 
         @Override
@@ -221,10 +367,14 @@ public class PrimativeTypes {
 		}
         
         public IntValue(byte[] value) {
-            if(value[0] == SEType.PRIMATIVE.value() && value[1] == Primatives.INT.ordinal()) {
+            this(value, 0);
+        }
+        
+        public IntValue(byte[] value, int offset) {
+            if(value[offset] == SEType.PRIMATIVE.value() && value[offset+1] == Primatives.INT.ordinal()) {
                 int final_val = 0;
                 for(int i = 0; i < Integer.BYTES; i++) {
-                    final_val |= Byte.toUnsignedInt(value[i+2]) << (i*8);
+                    final_val |= Byte.toUnsignedInt(value[offset+i+2]) << (i*8);
                 }
                 this.value = final_val;
             } else this.value = 0;
@@ -235,9 +385,21 @@ public class PrimativeTypes {
 			return Integer.BYTES+2;
 		}
 
+		@Override
+		public int getSize(SEFormat format) {
+			return PrimativeTypes.getSize(Primatives.INT, value & 0xFFFFFFFFL, format);
+		}
+
 		@Override
 		public byte[] getSerialized() {
-			return PrimativeTypes.toBytes(value);
+			ByteArrayParser dest = new ByteArrayParser(getSize());
+			writeTo(dest);
+			return dest.toBytes();
+		}
+
+		@Override
+		public void writeTo(ByteArrayParser dest) {
+			PrimativeTypes.writeBits(dest, Primatives.INT, value & 0xFFFFFFFFL);
 		}
 
         @Override
@@ -256,10 +418,14 @@ public class PrimativeTypes {
 		}
         
         public LongValue(byte[] value) {
-            if(value[0] == SEType.PRIMATIVE.value() && value[1] == Primatives.LONG.ordinal()) {
+            this(value, 0);
+        }
+        
+        public LongValue(byte[] value, int offset) {
+            if(value[offset] == SEType.PRIMATIVE.value() && value[offset+1] == Primatives.LONG.ordinal()) {
                 long final_val = 0;
                 for(int i = 0; i < Long.BYTES; i++) {
-                    final_val |= Byte.toUnsignedLong(value[i+2]) << (i*8);
+                    final_val |= Byte.toUnsignedLong(value[offset+i+2]) << (i*8);
                 }
                 this.value = final_val;
             } else this.value = 0;
@@ -270,9 +436,21 @@ public class PrimativeTypes {
 			return Long.BYTES+2;
 		}
 
+		@Override
+		public int getSize(SEFormat format) {
+			return PrimativeTypes.getSize(Primatives.LONG, value, format);
+		}
+
 		@Override
 		public byte[] getSerialized() {
-			return PrimativeTypes.toBytes(value);
+			ByteArrayParser dest = new ByteArrayParser(getSize());
+			writeTo(dest);
+			return dest.toBytes();
+		}
+
+		@Override
+		public void writeTo(ByteArrayParser dest) {
+			PrimativeTypes.writeBits(dest, Primatives.LONG, value);
 		}
 
         @Override
@@ -291,10 +469,14 @@ public class PrimativeTypes {
 		}
         
         public FloatValue(byte[] value) {
-            if(value[0] == SEType.PRIMATIVE.value() && value[1] == Primatives.FLOAT.ordinal()) {
+            this(value, 0);
+        }
+        
+        public FloatValue(byte[] value, int offset) {
+            if(value[offset] == SEType.PRIMATIVE.value() && value[offset+1] == Primatives.FLOAT.ordinal()) {
                 int final_val = 0;
                 for(int i = 0; i < Float.BYTES; i++) {
-                    final_val |= Byte.toUnsignedInt(value[i+2]) << (i*8);
+                    final_val |= Byte.toUnsignedInt(value[offset+i+2]) << (i*8);
                 }
                 this.value = Float.intBitsToFloat(final_val);
             } else this.value = 0;
@@ -307,7 +489,15 @@ public class PrimativeTypes {
 
 		@Override
 		public byte[] getSerialized() {
-			return PrimativeTypes.toBytes(value);
+			ByteArrayParser dest = new ByteArrayParser(getSize());
+			writeTo(dest);
+			return dest.toBytes();
+		}
+
+		@Override
+		public void writeTo(ByteArrayParser dest) {
+			dest.addShort(getType());
+			dest.addFloat(value);
 		}
 
         @Override
@@ -326,10 +516,14 @@ public class PrimativeTypes {
 		}
         
         public DoubleValue(byte[] value) {
-            if(value[0] == SEType.PRIMATIVE.value() && value[1] == Primatives.DOUBLE.ordinal()) {
+            this(value, 0);
+        }
+        
+        public DoubleValue(byte[] value, int offset) {
+            if(value[offset] == SEType.PRIMATIVE.value() && value[offset+1] == Primatives.DOUBLE.ordinal()) {
                 long final_val = 0;
                 for(int i = 0; i < Double.BYTES; i++) {
-                    final_val |= Byte.toUnsignedLong(value[i+2]) << (i*8);
+                    final_val |= Byte.toUnsignedLong(value[offset+i+2]) << (i*8);
                 }
                 this.value = Double.longBitsToDouble(final_val);
             } else this.value = 0;
@@ -342,7 +536,15 @@ public class PrimativeTypes {
 
 		@Override
 		public byte[] getSerialized() {
-			return PrimativeTypes.toBytes(value);
+			ByteArrayParser dest = new ByteArrayParser(getSize());
+			writeTo(dest);
+			return dest.toBytes();
+		}
+
+		@Override
+		public void writeTo(ByteArrayParser dest) {
+			dest.addShort(getType());
+			dest.addDouble(value);
 		}
 
         @Override
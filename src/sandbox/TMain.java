@@ -18,6 +18,7 @@ package sandbox;
 
 import java.io.FileOutputStream;
 
+import gio.ddb.serial2.ByteStreamParser;
 import gio.ddb.serial2.SEBlock;
 import gio.ddb.serial2.SEList;
 import gio.ddb.serial2.SEString;
@@ -64,8 +65,7 @@ public class TMain {
 		
         try {
 			FileOutputStream out = new FileOutputStream("test0.sdb2");
-			out.write(block.getSerialized());
-			out.flush();
+			new ByteStreamParser(out).write(block);
 			out.close();
 		} catch (Exception e) {
 			e.printStackTrace();